@@ -0,0 +1,58 @@
+/*
+ * Copyright 2012-2015 One Platform Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onepf.benchmark;
+
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.content.SharedPreferences;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The context which provides only the package name and the in-memory {@link SharedPreferences}.
+ */
+final class FakeContext extends ContextWrapper {
+
+    private static final String PACKAGE_NAME = "org.onepf.benchmark";
+
+    private final Map<String, SharedPreferences> preferences = new HashMap<String, SharedPreferences>();
+
+    FakeContext() {
+        super(null);
+    }
+
+    @Override
+    public Context getApplicationContext() {
+        return this;
+    }
+
+    @Override
+    public String getPackageName() {
+        return PACKAGE_NAME;
+    }
+
+    @Override
+    public SharedPreferences getSharedPreferences(final String name, final int mode) {
+        SharedPreferences sharedPreferences = preferences.get(name);
+        if (sharedPreferences == null) {
+            sharedPreferences = new FakeSharedPreferences();
+            preferences.put(name, sharedPreferences);
+        }
+        return sharedPreferences;
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2012-2015 One Platform Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onepf.benchmark;
+
+import android.content.SharedPreferences;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The in-memory {@link SharedPreferences} which isn't backed by a file.
+ */
+final class FakeSharedPreferences implements SharedPreferences {
+
+    private final Map<String, Object> values = new HashMap<String, Object>();
+
+    @Override
+    public Map<String, ?> getAll() {
+        return new HashMap<String, Object>(values);
+    }
+
+    @Override
+    public String getString(final String key, final String defValue) {
+        final Object value = values.get(key);
+        return value == null ? defValue : (String) value;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public Set<String> getStringSet(final String key, final Set<String> defValues) {
+        final Object value = values.get(key);
+        return value == null ? defValues : (Set<String>) value;
+    }
+
+    @Override
+    public int getInt(final String key, final int defValue) {
+        final Object value = values.get(key);
+        return value == null ? defValue : (Integer) value;
+    }
+
+    @Override
+    public long getLong(final String key, final long defValue) {
+        final Object value = values.get(key);
+        return value == null ? defValue : (Long) value;
+    }
+
+    @Override
+    public float getFloat(final String key, final float defValue) {
+        final Object value = values.get(key);
+        return value == null ? defValue : (Float) value;
+    }
+
+    @Override
+    public boolean getBoolean(final String key, final boolean defValue) {
+        final Object value = values.get(key);
+        return value == null ? defValue : (Boolean) value;
+    }
+
+    @Override
+    public boolean contains(final String key) {
+        return values.containsKey(key);
+    }
+
+    @Override
+    public Editor edit() {
+        return new FakeEditor();
+    }
+
+    @Override
+    public void registerOnSharedPreferenceChangeListener(final OnSharedPreferenceChangeListener listener) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void unregisterOnSharedPreferenceChangeListener(final OnSharedPreferenceChangeListener listener) {
+        throw new UnsupportedOperationException();
+    }
+
+    private final class FakeEditor implements Editor {
+
+        private final Map<String, Object> modified = new HashMap<String, Object>();
+        private boolean clear;
+
+        @Override
+        public Editor putString(final String key, final String value) {
+            modified.put(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor putStringSet(final String key, final Set<String> values) {
+            modified.put(key, values == null ? null : new HashSet<String>(values));
+            return this;
+        }
+
+        @Override
+        public Editor putInt(final String key, final int value) {
+            modified.put(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor putLong(final String key, final long value) {
+            modified.put(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor putFloat(final String key, final float value) {
+            modified.put(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor putBoolean(final String key, final boolean value) {
+            modified.put(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor remove(final String key) {
+            modified.put(key, null);
+            return this;
+        }
+
+        @Override
+        public Editor clear() {
+            clear = true;
+            return this;
+        }
+
+        @Override
+        public boolean commit() {
+            if (clear) {
+                values.clear();
+            }
+            for (Map.Entry<String, Object> entry : modified.entrySet()) {
+                if (entry.getValue() == null) {
+                    values.remove(entry.getKey());
+                } else {
+                    values.put(entry.getKey(), entry.getValue());
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void apply() {
+            commit();
+        }
+    }
+}
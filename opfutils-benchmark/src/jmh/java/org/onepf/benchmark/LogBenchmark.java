@@ -0,0 +1,68 @@
+/*
+ * Copyright 2012-2015 One Platform Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onepf.benchmark;
+
+import org.onepf.opfutils.OPFLog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of the {@link OPFLog} calls with the disabled and the enabled logging.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class LogBenchmark {
+
+    @Param({"false", "true"})
+    public boolean enabled;
+
+    private final Object argument = Integer.valueOf(42);
+
+    @Setup
+    public void setUp() {
+        OPFLog.setEnabled(enabled, enabled);
+    }
+
+    @Benchmark
+    public void debug() {
+        OPFLog.d("Benchmark message");
+    }
+
+    @Benchmark
+    public void debugFormat() {
+        OPFLog.d("Benchmark message %s", argument);
+    }
+
+    @Benchmark
+    public void info() {
+        OPFLog.i("Benchmark message");
+    }
+
+    @Benchmark
+    public void logMethod() {
+        OPFLog.logMethod(argument);
+    }
+}
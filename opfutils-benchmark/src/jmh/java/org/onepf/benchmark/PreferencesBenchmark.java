@@ -0,0 +1,70 @@
+/*
+ * Copyright 2012-2015 One Platform Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onepf.benchmark;
+
+import org.onepf.opfutils.OPFPreferences;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The overhead of {@link OPFPreferences} over the in-memory {@link android.content.SharedPreferences}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class PreferencesBenchmark {
+
+    private static final String STRING_KEY = "string";
+    private static final String INT_KEY = "int";
+
+    private OPFPreferences preferences;
+    private int counter;
+
+    @Setup
+    public void setUp() {
+        preferences = new OPFPreferences(new FakeContext());
+        preferences.put(STRING_KEY, "value");
+        preferences.put(INT_KEY, 1);
+    }
+
+    @Benchmark
+    public String getString() {
+        return preferences.getString(STRING_KEY);
+    }
+
+    @Benchmark
+    public Integer getInt() {
+        return preferences.getInt(INT_KEY);
+    }
+
+    @Benchmark
+    public void putString() {
+        preferences.put(STRING_KEY, "value");
+    }
+
+    @Benchmark
+    public void putInt() {
+        preferences.put(INT_KEY, counter++);
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2012-2015 One Platform Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onepf.benchmark;
+
+import android.content.Intent;
+import android.os.Bundle;
+
+import org.onepf.opfutils.OPFUtils;
+import org.onepf.opfutils.core.OPFRenderLimits;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of the {@link Intent} and {@link Bundle} rendering by {@link OPFUtils}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class RenderBenchmark {
+
+    private static final int EXTRAS_COUNT = 8;
+    private static final int PAYLOAD_SIZE = 16 * 1024;
+
+    private final StringBuilder output = new StringBuilder();
+
+    private Intent intent;
+    private Bundle bundle;
+
+    @Setup
+    public void setUp() {
+        bundle = new Bundle();
+        for (int i = 0; i < EXTRAS_COUNT; i++) {
+            bundle.putString("key" + i, "value" + i);
+        }
+        final Bundle nested = new Bundle();
+        nested.putInt("int", 1);
+        bundle.putBundle("nested", nested);
+        bundle.putByteArray("payload", new byte[PAYLOAD_SIZE]);
+
+        intent = new Intent("org.onepf.benchmark.ACTION");
+        intent.putExtras(bundle);
+    }
+
+    @Benchmark
+    public String intentToString() {
+        return OPFUtils.toString(intent);
+    }
+
+    @Benchmark
+    public String bundleToString() {
+        return OPFUtils.toString(bundle);
+    }
+
+    @Benchmark
+    public String intentToBoundedString() {
+        return OPFUtils.toString(intent, OPFRenderLimits.DEFAULT);
+    }
+
+    @Benchmark
+    public StringBuilder intentAppendTo() throws IOException {
+        output.setLength(0);
+        return OPFUtils.appendTo(output, intent, OPFRenderLimits.DEFAULT);
+    }
+}
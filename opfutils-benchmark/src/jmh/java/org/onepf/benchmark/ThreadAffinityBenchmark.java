@@ -0,0 +1,72 @@
+/*
+ * Copyright 2012-2015 One Platform Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onepf.benchmark;
+
+import org.onepf.opfutils.OPFChecks;
+import org.onepf.opfutils.OPFThreadAffinity;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of the {@link OPFThreadAffinity#check()} calls compared to {@link OPFChecks#checkThread(boolean)}.
+ * <p/>
+ * The benchmark thread is the main thread, because it's the first one which loads the {@code Looper} stub.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class ThreadAffinityBenchmark {
+
+    private OPFThreadAffinity mainThread;
+    private OPFThreadAffinity namedThread;
+    private OPFThreadAffinity confined;
+
+    @Setup
+    public void setUp() {
+        mainThread = OPFThreadAffinity.mainThread();
+        namedThread = OPFThreadAffinity.namedThread(Thread.currentThread().getName());
+        confined = OPFThreadAffinity.confined();
+        mainThread.check();
+    }
+
+    @Benchmark
+    public void mainThread() {
+        mainThread.check();
+    }
+
+    @Benchmark
+    public void namedThread() {
+        namedThread.check();
+    }
+
+    @Benchmark
+    public void confined() {
+        confined.check();
+    }
+
+    @Benchmark
+    public void checkThread() {
+        OPFChecks.checkThread(true);
+    }
+}
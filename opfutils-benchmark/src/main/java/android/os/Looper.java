@@ -0,0 +1,45 @@
+/*
+ * Copyright 2012-2015 One Platform Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.os;
+
+/**
+ * The benchmark stub of {@code android.os.Looper}, the original one requires the native code.
+ * <p/>
+ * The thread which loads the class is the main thread. Message loops aren't supported.
+ */
+public final class Looper {
+
+    private static final Looper MAIN_LOOPER = new Looper(Thread.currentThread());
+
+    private final Thread thread;
+
+    private Looper(final Thread thread) {
+        this.thread = thread;
+    }
+
+    public static Looper getMainLooper() {
+        return MAIN_LOOPER;
+    }
+
+    public static Looper myLooper() {
+        return Thread.currentThread() == MAIN_LOOPER.thread ? MAIN_LOOPER : null;
+    }
+
+    public Thread getThread() {
+        return thread;
+    }
+}
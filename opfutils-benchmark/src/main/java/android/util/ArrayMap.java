@@ -0,0 +1,67 @@
+/*
+ * Copyright 2012-2015 One Platform Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The benchmark stub of {@code android.util.ArrayMap}, the original one uses the libcore-only
+ * {@code System.arraycopy} overloads.
+ * <p/>
+ * Provides only the members used by {@code android.os.Bundle}.
+ */
+public final class ArrayMap<K, V> extends LinkedHashMap<K, V> {
+
+    @SuppressWarnings("rawtypes")
+    public static final ArrayMap EMPTY = new ArrayMap();
+
+    private static final long serialVersionUID = 1L;
+
+    public ArrayMap() {
+        super();
+    }
+
+    public ArrayMap(final int capacity) {
+        super(Math.max(capacity, 1));
+    }
+
+    public ArrayMap(final ArrayMap<K, V> map) {
+        super(map);
+    }
+
+    public void ensureCapacity(final int minimumCapacity) {
+        // nothing
+    }
+
+    public void erase() {
+        clear();
+    }
+
+    public void putAll(final ArrayMap<? extends K, ? extends V> map) {
+        super.putAll(map);
+    }
+
+    public V valueAt(final int index) {
+        final Iterator<Map.Entry<K, V>> iterator = entrySet().iterator();
+        for (int i = 0; i < index; i++) {
+            iterator.next();
+        }
+        return iterator.next().getValue();
+    }
+}
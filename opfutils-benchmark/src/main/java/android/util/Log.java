@@ -0,0 +1,132 @@
+/*
+ * Copyright 2012-2015 One Platform Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.util;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.UnknownHostException;
+
+/**
+ * The benchmark stub of {@code android.util.Log}, the original one requires the native code.
+ * <p/>
+ * Doesn't print the messages, only counts their length so the JIT can't eliminate the logging.
+ * {@link #isLoggable(String, int)} returns {@code true} for {@link #INFO} and higher levels like on a device.
+ */
+public final class Log {
+
+    public static final int VERBOSE = 2;
+    public static final int DEBUG = 3;
+    public static final int INFO = 4;
+    public static final int WARN = 5;
+    public static final int ERROR = 6;
+    public static final int ASSERT = 7;
+
+    private static volatile long printedChars;
+
+    private Log() {
+        throw new UnsupportedOperationException();
+    }
+
+    public static long getPrintedChars() {
+        return printedChars;
+    }
+
+    public static boolean isLoggable(final String tag, final int level) {
+        return level >= INFO;
+    }
+
+    public static int println(final int priority, final String tag, final String msg) {
+        final int length = msg == null ? 0 : msg.length();
+        printedChars += length;
+        return length;
+    }
+
+    public static int v(final String tag, final String msg) {
+        return println(VERBOSE, tag, msg);
+    }
+
+    public static int v(final String tag, final String msg, final Throwable tr) {
+        return println(VERBOSE, tag, msg + '\n' + getStackTraceString(tr));
+    }
+
+    public static int d(final String tag, final String msg) {
+        return println(DEBUG, tag, msg);
+    }
+
+    public static int d(final String tag, final String msg, final Throwable tr) {
+        return println(DEBUG, tag, msg + '\n' + getStackTraceString(tr));
+    }
+
+    public static int i(final String tag, final String msg) {
+        return println(INFO, tag, msg);
+    }
+
+    public static int i(final String tag, final String msg, final Throwable tr) {
+        return println(INFO, tag, msg + '\n' + getStackTraceString(tr));
+    }
+
+    public static int w(final String tag, final String msg) {
+        return println(WARN, tag, msg);
+    }
+
+    public static int w(final String tag, final String msg, final Throwable tr) {
+        return println(WARN, tag, msg + '\n' + getStackTraceString(tr));
+    }
+
+    public static int w(final String tag, final Throwable tr) {
+        return println(WARN, tag, getStackTraceString(tr));
+    }
+
+    public static int e(final String tag, final String msg) {
+        return println(ERROR, tag, msg);
+    }
+
+    public static int e(final String tag, final String msg, final Throwable tr) {
+        return println(ERROR, tag, msg + '\n' + getStackTraceString(tr));
+    }
+
+    public static int wtf(final String tag, final String msg) {
+        return println(ASSERT, tag, msg);
+    }
+
+    public static int wtf(final String tag, final Throwable tr) {
+        return println(ASSERT, tag, getStackTraceString(tr));
+    }
+
+    public static int wtf(final String tag, final String msg, final Throwable tr) {
+        return println(ASSERT, tag, msg + '\n' + getStackTraceString(tr));
+    }
+
+    public static String getStackTraceString(final Throwable tr) {
+        if (tr == null) {
+            return "";
+        }
+        Throwable t = tr;
+        while (t != null) {
+            if (t instanceof UnknownHostException) {
+                return "";
+            }
+            t = t.getCause();
+        }
+
+        final StringWriter sw = new StringWriter();
+        final PrintWriter pw = new PrintWriter(sw);
+        tr.printStackTrace(pw);
+        pw.flush();
+        return sw.toString();
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2012-2015 One Platform Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onepf.opfutils.core;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The striped counter for the frequently updated values.
+ * <p/>
+ * The updates from different threads go to different cells, so they don't contend on a single
+ * atomic value. The cells are padded to different cache lines. {@link #get()} sums the cells.
+ */
+public final class OPFCounter {
+
+    /**
+     * The distance between the cells in the array elements, 64 bytes for the {@code long} values.
+     */
+    private static final int PADDING = 8;
+    private static final int MAX_STRIPES = 16;
+    private static final int STRIPES = Math.min(MAX_STRIPES,
+            Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors())) << 1);
+
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+    public void increment() {
+        add(1);
+    }
+
+    public void add(final long delta) {
+        cells.addAndGet(getCellIndex(), delta);
+    }
+
+    /**
+     * Returns the sum of all updates. Isn't an atomic snapshot if the counter is updated concurrently.
+     *
+     * @return The counter value.
+     */
+    public long get() {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            sum += cells.get(i * PADDING);
+        }
+        return sum;
+    }
+
+    public void reset() {
+        for (int i = 0; i < STRIPES; i++) {
+            cells.set(i * PADDING, 0);
+        }
+    }
+
+    private static int getCellIndex() {
+        // Thread ids are sequential, so they are mixed to spread the threads over the cells
+        final long id = Thread.currentThread().getId();
+        final int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return ((hash >>> 16) & (STRIPES - 1)) * PADDING;
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(get());
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2012-2015 One Platform Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onepf.opfutils.core;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The lock-free histogram with fixed power-of-two buckets.
+ * <p/>
+ * The bucket {@code i} counts values from {@code 2^(i-1)} inclusive to {@code 2^i} exclusive,
+ * the bucket {@code 0} counts values less than {@code 1}. Percentiles are approximated by the bucket upper bound.
+ */
+public final class OPFHistogram {
+
+    public static final int BUCKET_COUNT = 64;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+
+    static int bucketIndex(final long value) {
+        return value < 1 ? 0 : Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(value));
+    }
+
+    /**
+     * Returns the exclusive upper bound of the bucket.
+     *
+     * @param index The bucket index.
+     * @return The upper bound of the bucket.
+     */
+    public static long getBucketUpperBound(final int index) {
+        return index >= BUCKET_COUNT - 1 ? Long.MAX_VALUE : 1L << index;
+    }
+
+    public void record(final long value) {
+        buckets.incrementAndGet(bucketIndex(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long currentMax = max.get();
+        while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+            currentMax = max.get();
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getSum() {
+        return sum.get();
+    }
+
+    /**
+     * Returns the maximum recorded value, {@code 0} if there are no values.
+     */
+    public long getMax() {
+        final long currentMax = max.get();
+        return currentMax == Long.MIN_VALUE ? 0 : currentMax;
+    }
+
+    public double getMean() {
+        final long currentCount = count.get();
+        return currentCount == 0 ? 0 : (double) sum.get() / currentCount;
+    }
+
+    public long getBucketCount(final int index) {
+        return buckets.get(index);
+    }
+
+    /**
+     * Returns the approximate percentile.
+     *
+     * @param percentile The percentile from {@code 0} to {@code 100}.
+     * @return The upper bound of the bucket which contains the percentile, {@code 0} if there are no values.
+     */
+    public long getPercentile(final double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile must be from 0 to 100.");
+        }
+        final long total = count.get();
+        if (total == 0) {
+            return 0;
+        }
+        final long threshold = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long accumulated = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            accumulated += buckets.get(i);
+            if (accumulated >= threshold) {
+                return Math.min(getBucketUpperBound(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Returns the copy of the histogram. Isn't an atomic snapshot if the histogram is updated concurrently.
+     *
+     * @return The copy of the histogram.
+     */
+    public OPFHistogram copy() {
+        final OPFHistogram copy = new OPFHistogram();
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            copy.buckets.set(i, buckets.get(i));
+        }
+        copy.count.set(count.get());
+        copy.sum.set(sum.get());
+        copy.max.set(max.get());
+        return copy;
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(Long.MIN_VALUE);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "OPFHistogram{count=%d, mean=%.1f, p50=%d, p99=%d, max=%d}",
+                getCount(), getMean(), getPercentile(50), getPercentile(99), getMax());
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2012-2015 One Platform Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onepf.opfutils.core;
+
+import java.util.Locale;
+
+/**
+ * The statistics of the batched logcat emission. See {@code OPFLog.setBatchWindow(long)}.
+ */
+public final class OPFLogBatchStats {
+
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    private final long recordCount;
+    private final long batchCount;
+    private final long entryCount;
+    private final int maxBatchSize;
+    private final long totalFlushLatencyNanos;
+    private final long maxFlushLatencyNanos;
+
+    public OPFLogBatchStats(final long recordCount,
+                            final long batchCount,
+                            final long entryCount,
+                            final int maxBatchSize,
+                            final long totalFlushLatencyNanos,
+                            final long maxFlushLatencyNanos) {
+        this.recordCount = recordCount;
+        this.batchCount = batchCount;
+        this.entryCount = entryCount;
+        this.maxBatchSize = maxBatchSize;
+        this.totalFlushLatencyNanos = totalFlushLatencyNanos;
+        this.maxFlushLatencyNanos = maxFlushLatencyNanos;
+    }
+
+    /**
+     * Returns the number of the logged records.
+     */
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Returns the number of the flushed batches.
+     */
+    public long getBatchCount() {
+        return batchCount;
+    }
+
+    /**
+     * Returns the number of the entries written to logcat, i.e. the number of the logcat writes.
+     */
+    public long getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * Returns the maximum number of records in a batch.
+     */
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * Returns the average number of records in a batch.
+     */
+    public double getAverageBatchSize() {
+        return batchCount == 0 ? 0 : (double) recordCount / batchCount;
+    }
+
+    /**
+     * Returns the average time from the first record of a batch to the batch flush.
+     */
+    public double getAverageFlushLatencyMillis() {
+        return batchCount == 0 ? 0 : totalFlushLatencyNanos / NANOS_PER_MILLI / batchCount;
+    }
+
+    /**
+     * Returns the maximum time from the first record of a batch to the batch flush.
+     */
+    public double getMaxFlushLatencyMillis() {
+        return maxFlushLatencyNanos / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US,
+                "OPFLogBatchStats{records=%d, batches=%d, entries=%d, averageBatchSize=%.1f, "
+                        + "maxBatchSize=%d, averageFlushLatency=%.2fms, maxFlushLatency=%.2fms}",
+                recordCount, batchCount, entryCount, getAverageBatchSize(),
+                maxBatchSize, getAverageFlushLatencyMillis(), getMaxFlushLatencyMillis());
+    }
+}
@@ -0,0 +1,404 @@
+/*
+ * Copyright 2012-2015 One Platform Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onepf.opfutils.core;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * The structured log record: an event name with typed fields.
+ * <p/>
+ * Is created by {@code OPFLog.event(int, String)}. The event is encoded to the compact binary record
+ * for the {@link OPFLogSink} and is rendered to text only when it's sent to logcat.
+ * <p/>
+ * Binary record format:
+ * <pre>
+ * version:byte level:byte timestamp:int64 name:string fieldCount:varint field*
+ * field = type:byte key:string value
+ * </pre>
+ * Strings are encoded as varint length followed by UTF-8 bytes, ints and longs as zigzag varints,
+ * doubles as 8 big-endian bytes, booleans as a single byte.
+ */
+public final class OPFLogEvent {
+
+    public static final byte TYPE_NULL = 0;
+    public static final byte TYPE_INT = 1;
+    public static final byte TYPE_LONG = 2;
+    public static final byte TYPE_DOUBLE = 3;
+    public static final byte TYPE_BOOLEAN = 4;
+    public static final byte TYPE_STRING = 5;
+
+    private static final byte VERSION = 1;
+    private static final int INITIAL_CAPACITY = 4;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * The event which ignores all fields. Is returned when the event can't be logged anywhere.
+     */
+    public static final OPFLogEvent DISABLED = new OPFLogEvent(0, "", 0L, false);
+
+    /**
+     * Is set by {@code OPFLog}, the events aren't written anywhere on a plain JVM.
+     */
+    @Nullable
+    private static volatile Dispatcher dispatcher;
+
+    private final int level;
+    @Nonnull
+    private final String name;
+    private final long timestamp;
+    private final boolean enabled;
+
+    @Nonnull
+    private String[] keys = new String[INITIAL_CAPACITY];
+    @Nonnull
+    private byte[] types = new byte[INITIAL_CAPACITY];
+    @Nonnull
+    private long[] primitives = new long[INITIAL_CAPACITY];
+    @Nonnull
+    private String[] strings = new String[INITIAL_CAPACITY];
+    private int size;
+
+    public OPFLogEvent(final int level, @Nonnull final String name, final long timestamp) {
+        this(level, name, timestamp, true);
+    }
+
+    private OPFLogEvent(final int level,
+                        @Nonnull final String name,
+                        final long timestamp,
+                        final boolean enabled) {
+        this.level = level;
+        this.name = name;
+        this.timestamp = timestamp;
+        this.enabled = enabled;
+    }
+
+    /**
+     * Decodes the binary record created by {@link #encode()}.
+     *
+     * @param record The binary record.
+     * @return The decoded event.
+     * @throws IllegalArgumentException If the record is malformed.
+     */
+    @Nonnull
+    public static OPFLogEvent decode(@Nonnull final byte[] record) {
+        final Reader reader = new Reader(record);
+        final byte version = reader.readByte();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported record version " + version);
+        }
+        final int level = reader.readByte();
+        final long timestamp = reader.readFixedLong();
+        final OPFLogEvent event = new OPFLogEvent(level, reader.readString(), timestamp);
+        final int fieldCount = (int) reader.readVarLong();
+        for (int i = 0; i < fieldCount; i++) {
+            final byte type = reader.readByte();
+            final String key = reader.readString();
+            switch (type) {
+                case TYPE_NULL:
+                    event.add(key, TYPE_NULL, 0L, null);
+                    break;
+                case TYPE_INT:
+                case TYPE_LONG:
+                    event.add(key, type, decodeZigZag(reader.readVarLong()), null);
+                    break;
+                case TYPE_DOUBLE:
+                    event.add(key, type, reader.readFixedLong(), null);
+                    break;
+                case TYPE_BOOLEAN:
+                    event.add(key, type, reader.readByte(), null);
+                    break;
+                case TYPE_STRING:
+                    event.add(key, type, 0L, reader.readString());
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown field type " + type);
+            }
+        }
+        return event;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    @Nonnull
+    public String getName() {
+        return name;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public int getFieldCount() {
+        return size;
+    }
+
+    @Nonnull
+    public String getKey(final int index) {
+        checkIndex(index);
+        return keys[index];
+    }
+
+    public byte getType(final int index) {
+        checkIndex(index);
+        return types[index];
+    }
+
+    /**
+     * Returns the field value boxed according to its type.
+     *
+     * @param index The index of the field.
+     * @return The field value.
+     */
+    @Nullable
+    public Object getValue(final int index) {
+        checkIndex(index);
+        switch (types[index]) {
+            case TYPE_INT:
+                return (int) primitives[index];
+            case TYPE_LONG:
+                return primitives[index];
+            case TYPE_DOUBLE:
+                return Double.longBitsToDouble(primitives[index]);
+            case TYPE_BOOLEAN:
+                return primitives[index] != 0;
+            case TYPE_STRING:
+                return strings[index];
+            default:
+                return null;
+        }
+    }
+
+    public OPFLogEvent put(@Nonnull final String key, final int value) {
+        return add(key, TYPE_INT, value, null);
+    }
+
+    public OPFLogEvent put(@Nonnull final String key, final long value) {
+        return add(key, TYPE_LONG, value, null);
+    }
+
+    public OPFLogEvent put(@Nonnull final String key, final double value) {
+        return add(key, TYPE_DOUBLE, Double.doubleToRawLongBits(value), null);
+    }
+
+    public OPFLogEvent put(@Nonnull final String key, final boolean value) {
+        return add(key, TYPE_BOOLEAN, value ? 1L : 0L, null);
+    }
+
+    public OPFLogEvent put(@Nonnull final String key, @Nullable final String value) {
+        return value == null
+                ? add(key, TYPE_NULL, 0L, null)
+                : add(key, TYPE_STRING, 0L, value);
+    }
+
+    /**
+     * Writes the event to the {@link OPFLogSink}, if it's set, and to logcat, if the event level is loggable.
+     */
+    public void log() {
+        final Dispatcher currentDispatcher = dispatcher;
+        if (enabled && currentDispatcher != null) {
+            currentDispatcher.dispatch(this);
+        }
+    }
+
+    /**
+     * Encodes the event to the compact binary record.
+     *
+     * @return The binary record.
+     */
+    @Nonnull
+    public byte[] encode() {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(32 + size * 16);
+        out.write(VERSION);
+        out.write(level);
+        writeFixedLong(out, timestamp);
+        writeString(out, name);
+        writeVarLong(out, size);
+        for (int i = 0; i < size; i++) {
+            final byte type = types[i];
+            out.write(type);
+            writeString(out, keys[i]);
+            switch (type) {
+                case TYPE_INT:
+                case TYPE_LONG:
+                    writeVarLong(out, encodeZigZag(primitives[i]));
+                    break;
+                case TYPE_DOUBLE:
+                    writeFixedLong(out, primitives[i]);
+                    break;
+                case TYPE_BOOLEAN:
+                    out.write((int) primitives[i]);
+                    break;
+                case TYPE_STRING:
+                    writeString(out, strings[i]);
+                    break;
+                default:
+                    break;
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Renders the event to text in the {@code name{key=value, key="value"}} format.
+     */
+    @Override
+    public String toString() {
+        final StringBuilder stringBuilder = new StringBuilder(name).append('{');
+        for (int i = 0; i < size; i++) {
+            if (i != 0) {
+                stringBuilder.append(", ");
+            }
+            stringBuilder.append(keys[i]).append('=');
+            if (types[i] == TYPE_STRING) {
+                stringBuilder.append('"').append(strings[i]).append('"');
+            } else {
+                stringBuilder.append(getValue(i));
+            }
+        }
+        return stringBuilder.append('}').toString();
+    }
+
+    private OPFLogEvent add(@Nonnull final String key,
+                            final byte type,
+                            final long primitive,
+                            @Nullable final String string) {
+        if (!enabled) {
+            return this;
+        }
+        if (size == keys.length) {
+            final int capacity = size * 2;
+            keys = Arrays.copyOf(keys, capacity);
+            types = Arrays.copyOf(types, capacity);
+            primitives = Arrays.copyOf(primitives, capacity);
+            strings = Arrays.copyOf(strings, capacity);
+        }
+        keys[size] = key;
+        types[size] = type;
+        primitives[size] = primitive;
+        strings[size] = string;
+        size++;
+        return this;
+    }
+
+    private void checkIndex(final int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+    }
+
+    private static long encodeZigZag(final long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long decodeZigZag(final long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarLong(@Nonnull final ByteArrayOutputStream out, final long value) {
+        long remaining = value;
+        while ((remaining & ~0x7FL) != 0) {
+            out.write((int) ((remaining & 0x7F) | 0x80));
+            remaining >>>= 7;
+        }
+        out.write((int) remaining);
+    }
+
+    private static void writeFixedLong(@Nonnull final ByteArrayOutputStream out, final long value) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            out.write((int) (value >>> shift));
+        }
+    }
+
+    private static void writeString(@Nonnull final ByteArrayOutputStream out, @Nonnull final String value) {
+        final byte[] bytes = value.getBytes(UTF_8);
+        writeVarLong(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Sets the dispatcher which writes the logged events.
+     *
+     * @param dispatcher The dispatcher or {@code null} to drop the logged events.
+     */
+    public static void setDispatcher(@Nullable final Dispatcher dispatcher) {
+        OPFLogEvent.dispatcher = dispatcher;
+    }
+
+    /**
+     * Writes the events on {@link #log()}.
+     */
+    public interface Dispatcher {
+
+        void dispatch(@Nonnull OPFLogEvent event);
+    }
+
+    private static final class Reader {
+
+        @Nonnull
+        private final byte[] record;
+        private int position;
+
+        private Reader(@Nonnull final byte[] record) {
+            this.record = record;
+        }
+
+        private byte readByte() {
+            if (position >= record.length) {
+                throw new IllegalArgumentException("Unexpected end of record");
+            }
+            return record[position++];
+        }
+
+        private long readVarLong() {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                final byte b = readByte();
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint");
+        }
+
+        private long readFixedLong() {
+            long result = 0;
+            for (int i = 0; i < 8; i++) {
+                result = (result << 8) | (readByte() & 0xFF);
+            }
+            return result;
+        }
+
+        @Nonnull
+        private String readString() {
+            final int length = (int) readVarLong();
+            if (length < 0 || position + length > record.length) {
+                throw new IllegalArgumentException("Unexpected end of record");
+            }
+            final String value = new String(record, position, length, UTF_8);
+            position += length;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2012-2015 One Platform Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onepf.opfutils.core;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Receives the binary records of the {@link OPFLogEvent}s, e.g. to write them to a file or a ring buffer.
+ * <p/>
+ * Is called on the thread that logs the event.
+ */
+public interface OPFLogSink {
+
+    /**
+     * Writes the record.
+     *
+     * @param record The binary record created by {@link OPFLogEvent#encode()}.
+     *               Use {@link OPFLogEvent#decode(byte[])} to read it back.
+     */
+    void write(@Nonnull byte[] record);
+}
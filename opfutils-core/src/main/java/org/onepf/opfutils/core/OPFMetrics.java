@@ -0,0 +1,172 @@
+/*
+ * Copyright 2012-2015 One Platform Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onepf.opfutils.core;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Nonnull;
+
+/**
+ * The process-wide registry of the counters, histograms and gauges.
+ * <p/>
+ * The library components record their own metrics:
+ * <ul>
+ * <li>{@code opfutils.log.<level>} - the records written to logcat by {@code OPFLog} and {@code OPFLogger}.</li>
+ * <li>{@link #PREFERENCES_APPLY_LATENCY} - the duration of the {@code OPFPreferences} writes in nanoseconds,
+ * from {@code edit()} to {@code apply()}. It's the cost for the calling thread, the disk write is done later
+ * in background and isn't measured.</li>
+ * <li>{@link #PACKAGE_MANAGER_CALLS} - the {@code PackageManager} queries, each of them
+ * is a binder call.</li>
+ * <li>{@link #BACKGROUND_QUEUE_DEPTH}, {@link #MAIN_THREAD_QUEUE_DEPTH} - the tasks waiting in
+ * the {@code OPFExecutors} queues.</li>
+ * <li>{@link #BACKGROUND_WAIT_TIME}, {@link #MAIN_THREAD_WAIT_TIME} - the time in nanoseconds from
+ * the submission of an {@code OPFExecutors} task to its start.</li>
+ * </ul>
+ * The metrics are recorded until {@link #setEnabled(boolean)} is called with {@code false}.
+ */
+public final class OPFMetrics {
+
+    public static final String LOG_RECORDS_PREFIX = "opfutils.log.";
+    public static final String PREFERENCES_APPLY_LATENCY = "opfutils.preferences.apply_latency_ns";
+    public static final String PACKAGE_MANAGER_CALLS = "opfutils.package_manager.calls";
+    public static final String BACKGROUND_QUEUE_DEPTH = "opfutils.executor.background.queue_depth";
+    public static final String BACKGROUND_WAIT_TIME = "opfutils.executor.background.wait_time_ns";
+    public static final String MAIN_THREAD_QUEUE_DEPTH = "opfutils.executor.main.queue_depth";
+    public static final String MAIN_THREAD_WAIT_TIME = "opfutils.executor.main.wait_time_ns";
+
+    private static final ConcurrentMap<String, OPFCounter> COUNTERS = new ConcurrentHashMap<String, OPFCounter>();
+    private static final ConcurrentMap<String, OPFHistogram> HISTOGRAMS
+            = new ConcurrentHashMap<String, OPFHistogram>();
+    private static final ConcurrentMap<String, OPFGauge> GAUGES = new ConcurrentHashMap<String, OPFGauge>();
+
+    private static volatile boolean enabled = true;
+
+    private OPFMetrics() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Enables or disables the recording of the library metrics. The metrics are enabled by default.
+     *
+     * @param enabled {@code true} to record the metrics, {@code false} otherwise.
+     */
+    public static void setEnabled(final boolean enabled) {
+        OPFMetrics.enabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns the counter with the name, creates it if it doesn't exist.
+     *
+     * @param name The counter name.
+     * @return The counter.
+     */
+    @Nonnull
+    public static OPFCounter counter(@Nonnull final String name) {
+        checkName(name);
+        OPFCounter counter = COUNTERS.get(name);
+        if (counter == null) {
+            final OPFCounter newCounter = new OPFCounter();
+            counter = COUNTERS.putIfAbsent(name, newCounter);
+            if (counter == null) {
+                counter = newCounter;
+            }
+        }
+        return counter;
+    }
+
+    /**
+     * Returns the histogram with the name, creates it if it doesn't exist.
+     *
+     * @param name The histogram name.
+     * @return The histogram.
+     */
+    @Nonnull
+    public static OPFHistogram histogram(@Nonnull final String name) {
+        checkName(name);
+        OPFHistogram histogram = HISTOGRAMS.get(name);
+        if (histogram == null) {
+            final OPFHistogram newHistogram = new OPFHistogram();
+            histogram = HISTOGRAMS.putIfAbsent(name, newHistogram);
+            if (histogram == null) {
+                histogram = newHistogram;
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * Registers the gauge, replaces the previously registered gauge with the same name.
+     *
+     * @param name  The gauge name.
+     * @param gauge The gauge.
+     */
+    public static void gauge(@Nonnull final String name, @Nonnull final OPFGauge gauge) {
+        checkName(name);
+        GAUGES.put(name, gauge);
+    }
+
+    public static void removeGauge(@Nonnull final String name) {
+        GAUGES.remove(name);
+    }
+
+    /**
+     * Returns the current values of all metrics.
+     *
+     * @return The snapshot of the metrics.
+     */
+    @Nonnull
+    public static OPFMetricsSnapshot snapshot() {
+        final Map<String, Long> counters = new HashMap<String, Long>(COUNTERS.size() * 2);
+        for (Map.Entry<String, OPFCounter> entry : COUNTERS.entrySet()) {
+            counters.put(entry.getKey(), entry.getValue().get());
+        }
+        final Map<String, OPFHistogram> histograms = new HashMap<String, OPFHistogram>(HISTOGRAMS.size() * 2);
+        for (Map.Entry<String, OPFHistogram> entry : HISTOGRAMS.entrySet()) {
+            histograms.put(entry.getKey(), entry.getValue().copy());
+        }
+        final Map<String, Long> gauges = new HashMap<String, Long>(GAUGES.size() * 2);
+        for (Map.Entry<String, OPFGauge> entry : GAUGES.entrySet()) {
+            gauges.put(entry.getKey(), entry.getValue().getValue());
+        }
+        return new OPFMetricsSnapshot(System.currentTimeMillis(), counters, histograms, gauges);
+    }
+
+    /**
+     * Resets all counters and histograms. The gauges stay registered.
+     */
+    public static void reset() {
+        for (OPFCounter counter : COUNTERS.values()) {
+            counter.reset();
+        }
+        for (OPFHistogram histogram : HISTOGRAMS.values()) {
+            histogram.reset();
+        }
+    }
+
+    private static void checkName(final String name) {
+        if (name == null || name.length() == 0) {
+            throw new IllegalArgumentException("Metric name can't be null or empty.");
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2012-2015 One Platform Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onepf.opfutils.core;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * The values of all {@link OPFMetrics} at the moment the snapshot was taken.
+ * <p/>
+ * Is immutable. The maps are sorted by the metric name.
+ */
+public final class OPFMetricsSnapshot {
+
+    private final long timestamp;
+    @Nonnull
+    private final Map<String, Long> counters;
+    @Nonnull
+    private final Map<String, OPFHistogram> histograms;
+    @Nonnull
+    private final Map<String, Long> gauges;
+
+    OPFMetricsSnapshot(final long timestamp,
+                       @Nonnull final Map<String, Long> counters,
+                       @Nonnull final Map<String, OPFHistogram> histograms,
+                       @Nonnull final Map<String, Long> gauges) {
+        this.timestamp = timestamp;
+        this.counters = Collections.unmodifiableMap(new TreeMap<String, Long>(counters));
+        this.histograms = Collections.unmodifiableMap(new TreeMap<String, OPFHistogram>(histograms));
+        this.gauges = Collections.unmodifiableMap(new TreeMap<String, Long>(gauges));
+    }
+
+    /**
+     * Returns the time the snapshot was taken in milliseconds since the epoch.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    @Nonnull
+    public Map<String, Long> getCounters() {
+        return counters;
+    }
+
+    /**
+     * Returns the histograms. They're the copies, so they aren't changed by the new records.
+     */
+    @Nonnull
+    public Map<String, OPFHistogram> getHistograms() {
+        return histograms;
+    }
+
+    @Nonnull
+    public Map<String, Long> getGauges() {
+        return gauges;
+    }
+
+    /**
+     * Returns the counter value, {@code 0} if there is no such counter.
+     *
+     * @param name The counter name.
+     * @return The counter value.
+     */
+    public long getCounter(@Nonnull final String name) {
+        final Long value = counters.get(name);
+        return value == null ? 0 : value;
+    }
+
+    @Nullable
+    public OPFHistogram getHistogram(@Nonnull final String name) {
+        return histograms.get(name);
+    }
+
+    @Nullable
+    public Long getGauge(@Nonnull final String name) {
+        return gauges.get(name);
+    }
+
+    @Override
+    public String toString() {
+        return "OPFMetricsSnapshot{counters=" + counters
+                + ", histograms=" + histograms
+                + ", gauges=" + gauges
+                + '}';
+    }
+}
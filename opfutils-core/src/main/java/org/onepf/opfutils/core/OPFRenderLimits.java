@@ -0,0 +1,111 @@
+/*
+ * Copyright 2012-2015 One Platform Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onepf.opfutils.core;
+
+/**
+ * The limits of the bounded {@code Intent} and {@code Bundle} rendering
+ * by {@code OPFUtils.appendTo(Appendable, Intent, OPFRenderLimits)}.
+ * <p/>
+ * Is immutable, use {@link Builder} to create the custom limits.
+ */
+public final class OPFRenderLimits {
+
+    /**
+     * The default limits: 3 nested levels, 16 elements for each bundle, array or collection, 1024 characters.
+     */
+    public static final OPFRenderLimits DEFAULT = new Builder().build();
+
+    private final int maxDepth;
+    private final int maxElements;
+    private final int maxLength;
+
+    private OPFRenderLimits(final int maxDepth, final int maxElements, final int maxLength) {
+        this.maxDepth = maxDepth;
+        this.maxElements = maxElements;
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * Returns the maximum nesting level of the rendered bundles, arrays and collections.
+     *
+     * @return The maximum nesting level.
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Returns the maximum number of the rendered entries of each bundle, array or collection.
+     *
+     * @return The maximum number of the rendered elements.
+     */
+    public int getMaxElements() {
+        return maxElements;
+    }
+
+    /**
+     * Returns the maximum length of the rendered text, not including the truncation mark.
+     *
+     * @return The maximum length of the rendered text.
+     */
+    public int getMaxLength() {
+        return maxLength;
+    }
+
+    @Override
+    public String toString() {
+        return "OPFRenderLimits{maxDepth=" + maxDepth
+                + ", maxElements=" + maxElements
+                + ", maxLength=" + maxLength
+                + '}';
+    }
+
+    public static final class Builder {
+
+        private int maxDepth = 3;
+        private int maxElements = 16;
+        private int maxLength = 1024;
+
+        public Builder setMaxDepth(final int maxDepth) {
+            if (maxDepth < 0) {
+                throw new IllegalArgumentException("Max depth can't be negative.");
+            }
+            this.maxDepth = maxDepth;
+            return this;
+        }
+
+        public Builder setMaxElements(final int maxElements) {
+            if (maxElements < 0) {
+                throw new IllegalArgumentException("Max elements can't be negative.");
+            }
+            this.maxElements = maxElements;
+            return this;
+        }
+
+        public Builder setMaxLength(final int maxLength) {
+            if (maxLength <= 0) {
+                throw new IllegalArgumentException("Max length must be positive.");
+            }
+            this.maxLength = maxLength;
+            return this;
+        }
+
+        public OPFRenderLimits build() {
+            return new OPFRenderLimits(maxDepth, maxElements, maxLength);
+        }
+    }
+}
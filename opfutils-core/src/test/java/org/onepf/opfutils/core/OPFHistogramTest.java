@@ -0,0 +1,66 @@
+/*
+ * Copyright 2012-2015 One Platform Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onepf.opfutils.core;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class OPFHistogramTest extends Assert {
+
+    @Test
+    public void testRecord() {
+        final OPFHistogram histogram = new OPFHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(5050, histogram.getSum());
+        assertEquals(100, histogram.getMax());
+        assertEquals(50.5, histogram.getMean(), 0.001);
+        assertEquals(64, histogram.getPercentile(50));
+        assertEquals(100, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void testBuckets() {
+        assertEquals(0, OPFHistogram.bucketIndex(0));
+        assertEquals(1, OPFHistogram.bucketIndex(1));
+        assertEquals(2, OPFHistogram.bucketIndex(2));
+        assertEquals(2, OPFHistogram.bucketIndex(3));
+        assertEquals(3, OPFHistogram.bucketIndex(4));
+        assertEquals(OPFHistogram.BUCKET_COUNT - 1, OPFHistogram.bucketIndex(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testEmpty() {
+        final OPFHistogram histogram = new OPFHistogram();
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getPercentile(99));
+        assertEquals(0.0, histogram.getMean());
+    }
+
+    @Test
+    public void testReset() {
+        final OPFHistogram histogram = new OPFHistogram();
+        histogram.record(10);
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getBucketCount(OPFHistogram.bucketIndex(10)));
+    }
+}
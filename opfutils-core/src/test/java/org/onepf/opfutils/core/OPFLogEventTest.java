@@ -0,0 +1,76 @@
+/*
+ * Copyright 2012-2015 One Platform Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onepf.opfutils.core;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class OPFLogEventTest extends Assert {
+
+    private static final int DEBUG = 3;
+    private static final int INFO = 4;
+    private static final long TIMESTAMP = 1425945600000L;
+
+    @Test
+    public void testEncodeDecode() {
+        final OPFLogEvent event = new OPFLogEvent(INFO, "purchase", TIMESTAMP)
+                .put("int", -42)
+                .put("long", Long.MAX_VALUE)
+                .put("double", 3.14159265)
+                .put("boolean", true)
+                .put("string", "\u041f\u0440\u0438\u0432\u0435\u0442")
+                .put("null", (String) null);
+
+        final OPFLogEvent decoded = OPFLogEvent.decode(event.encode());
+
+        assertEquals(INFO, decoded.getLevel());
+        assertEquals("purchase", decoded.getName());
+        assertEquals(TIMESTAMP, decoded.getTimestamp());
+        assertEquals(event.getFieldCount(), decoded.getFieldCount());
+        for (int i = 0; i < event.getFieldCount(); i++) {
+            assertEquals(event.getKey(i), decoded.getKey(i));
+            assertEquals(event.getType(i), decoded.getType(i));
+            assertEquals(event.getValue(i), decoded.getValue(i));
+        }
+        assertEquals(event.toString(), decoded.toString());
+    }
+
+    @Test
+    public void testToString() {
+        final OPFLogEvent event = new OPFLogEvent(DEBUG, "event", TIMESTAMP)
+                .put("count", 1)
+                .put("name", "value");
+        assertEquals("event{count=1, name=\"value\"}", event.toString());
+    }
+
+    @Test
+    public void testDisabledEventIgnoresFields() {
+        final OPFLogEvent event = OPFLogEvent.DISABLED.put("key", 1);
+        assertEquals(0, event.getFieldCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecodeTruncatedRecord() {
+        final byte[] record = new OPFLogEvent(DEBUG, "event", TIMESTAMP)
+                .put("key", "value")
+                .encode();
+        OPFLogEvent.decode(Arrays.copyOf(record, record.length - 1));
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2012-2015 One Platform Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onepf.opfutils.core;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class OPFMetricsTest extends Assert {
+
+    private static final int THREADS = 4;
+    private static final int INCREMENTS = 10000;
+
+    @Test
+    public void testCounterFromManyThreads() throws InterruptedException {
+        final OPFCounter counter = OPFMetrics.counter("test.counter");
+        counter.reset();
+        final Thread[] threads = new Thread[THREADS];
+        for (int i = 0; i < THREADS; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < INCREMENTS; j++) {
+                        counter.increment();
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(THREADS * INCREMENTS, counter.get());
+        assertSame(counter, OPFMetrics.counter("test.counter"));
+    }
+
+    @Test
+    public void testSnapshot() {
+        OPFMetrics.counter("test.snapshot.counter").add(5);
+        OPFMetrics.histogram("test.snapshot.histogram").record(100);
+        OPFMetrics.gauge("test.snapshot.gauge", new OPFGauge() {
+            @Override
+            public long getValue() {
+                return 42;
+            }
+        });
+
+        final OPFMetricsSnapshot snapshot = OPFMetrics.snapshot();
+        OPFMetrics.histogram("test.snapshot.histogram").record(200);
+
+        assertTrue(snapshot.getCounter("test.snapshot.counter") >= 5);
+        assertEquals(Long.valueOf(42), snapshot.getGauge("test.snapshot.gauge"));
+        final OPFHistogram histogram = snapshot.getHistogram("test.snapshot.histogram");
+        assertNotNull(histogram);
+        assertEquals(OPFMetrics.histogram("test.snapshot.histogram").getCount() - 1, histogram.getCount());
+        OPFMetrics.removeGauge("test.snapshot.gauge");
+        assertNull(OPFMetrics.snapshot().getGauge("test.snapshot.gauge"));
+    }
+
+    @Test
+    public void testDisabled() {
+        OPFMetrics.setEnabled(false);
+        try {
+            assertFalse(OPFMetrics.isEnabled());
+        } finally {
+            OPFMetrics.setEnabled(true);
+        }
+        assertTrue(OPFMetrics.isEnabled());
+    }
+}
@@ -0,0 +1,6 @@
+# ProGuard rules which are applied to the apps using the library.
+
+# Strip the thread affinity assertions from the minified builds.
+-assumenosideeffects class org.onepf.opfutils.OPFThreadAffinity {
+    public void check();
+}
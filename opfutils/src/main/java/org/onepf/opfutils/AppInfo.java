@@ -0,0 +1,118 @@
+/*
+ * Copyright 2012-2015 One Platform Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onepf.opfutils;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * The memoized information about the app package.
+ * <p/>
+ * The version, the installer and the system flag can't change while the process is alive, so they're requested
+ * from the {@link PackageManager} only once. The instance is immutable, so it's published with the racy
+ * single-check idiom: concurrent first calls can load it more than once, but never see it partially constructed.
+ */
+final class AppInfo {
+
+    @Nullable
+    private static AppInfo instance;
+
+    @NonNull
+    private final String packageName;
+    private final int versionCode;
+    @Nullable
+    private final String installer;
+    private final boolean isSystemApp;
+
+    private AppInfo(@NonNull final String packageName,
+                    final int versionCode,
+                    @Nullable final String installer,
+                    final boolean isSystemApp) {
+        this.packageName = packageName;
+        this.versionCode = versionCode;
+        this.installer = installer;
+        this.isSystemApp = isSystemApp;
+    }
+
+    /**
+     * Returns the information about the app package.
+     *
+     * @param context The instance of {@link Context}.
+     * @return The information about the app package, or {@code null} if the package is not found.
+     */
+    @Nullable
+    static AppInfo get(@NonNull final Context context) {
+        final String packageName = context.getPackageName();
+        AppInfo appInfo = instance;
+        if (appInfo == null || !appInfo.packageName.equals(packageName)) {
+            appInfo = load(context, packageName);
+            if (appInfo != null) {
+                instance = appInfo;
+            }
+        }
+        return appInfo;
+    }
+
+    static void clear() {
+        instance = null;
+    }
+
+    @Nullable
+    private static AppInfo load(@NonNull final Context context, @NonNull final String packageName) {
+        final PackageManager packageManager = context.getPackageManager();
+        final PackageInfo packageInfo;
+        ComponentMetrics.onPackageManagerCall();
+        try {
+            packageInfo = packageManager.getPackageInfo(packageName, 0);
+        } catch (PackageManager.NameNotFoundException ignore) {
+            return null;
+        }
+
+        final ApplicationInfo applicationInfo = packageInfo.applicationInfo;
+        final boolean isSystemApp = applicationInfo != null && isSystemApp(applicationInfo);
+        ComponentMetrics.onPackageManagerCall();
+        return new AppInfo(packageName, packageInfo.versionCode,
+                packageManager.getInstallerPackageName(packageName), isSystemApp);
+    }
+
+    static boolean isSystemApp(@NonNull final ApplicationInfo applicationInfo) {
+        return (applicationInfo.flags & ApplicationInfo.FLAG_SYSTEM) != 0
+                || (applicationInfo.flags & ApplicationInfo.FLAG_UPDATED_SYSTEM_APP) != 0;
+    }
+
+    @NonNull
+    String getPackageName() {
+        return packageName;
+    }
+
+    int getVersionCode() {
+        return versionCode;
+    }
+
+    @Nullable
+    String getInstaller() {
+        return installer;
+    }
+
+    boolean isSystemApp() {
+        return isSystemApp;
+    }
+}
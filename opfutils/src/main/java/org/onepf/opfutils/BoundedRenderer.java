@@ -0,0 +1,291 @@
+/*
+ * Copyright 2012-2015 One Platform Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onepf.opfutils;
+
+import android.content.Intent;
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import org.onepf.opfutils.core.OPFRenderLimits;
+
+import java.lang.reflect.Array;
+import java.util.Collection;
+import java.util.Iterator;
+
+/**
+ * Renders {@link Intent}s and {@link Bundle}s with the size limited by {@link OPFRenderLimits}.
+ * <p/>
+ * The text is rendered to the per-thread builder, so the rendering allocates only the values' strings.
+ * The rendering stops reading the values as soon as the length limit is reached.
+ * <p/>
+ * The limits bound the rendered text, not the cost of reading a bundle: the first {@link Bundle#size()} call
+ * unparcels all values of a bundle received via IPC, however many of them are rendered.
+ * <p/>
+ * The entries of a top-level bundle and the extras of a top-level intent are rendered at depth 0.
+ */
+final class BoundedRenderer {
+
+    static final String TRUNCATION_MARK = "...";
+
+    private static final String ITEM_DIVIDER = ", ";
+    private static final int MAX_NUMBER_LENGTH = String.valueOf(Long.MIN_VALUE).length();
+
+    private static final ThreadLocal<BoundedRenderer> RENDERERS = new ThreadLocal<BoundedRenderer>();
+
+    @NonNull
+    private final StringBuilder builder = new StringBuilder();
+
+    private OPFRenderLimits limits;
+    private boolean isTruncated;
+
+    private BoundedRenderer() {
+    }
+
+    /**
+     * Returns the renderer of the current thread. A new renderer is created if the thread's one is in use,
+     * e.g. when a rendered value renders an intent in its {@code toString()}.
+     *
+     * @param limits The rendering limits.
+     * @return The renderer, must be released by {@link #release()}.
+     */
+    @NonNull
+    static BoundedRenderer obtain(@NonNull final OPFRenderLimits limits) {
+        BoundedRenderer renderer = RENDERERS.get();
+        if (renderer == null) {
+            renderer = new BoundedRenderer();
+        } else {
+            RENDERERS.set(null);
+        }
+        renderer.limits = limits;
+        return renderer;
+    }
+
+    /**
+     * Returns the renderer to the current thread.
+     */
+    void release() {
+        limits = null;
+        isTruncated = false;
+        if (builder.capacity() <= StringBuilderPool.MAX_RETAINED_CAPACITY) {
+            builder.setLength(0);
+            RENDERERS.set(this);
+        }
+    }
+
+    @NonNull
+    CharSequence getText() {
+        return builder;
+    }
+
+    void renderIntent(@Nullable final Intent intent, final int depth) {
+        if (intent == null) {
+            append("null");
+            return;
+        }
+
+        append("Intent{action=\"");
+        append(intent.getAction());
+        append("\", data=\"");
+        append(intent.getDataString());
+        append("\", component=\"");
+        append(String.valueOf(intent.getComponent()));
+        append("\", extras=");
+        if (isFull()) {
+            return;
+        }
+        // The extras are the intent's own level, like the entries of a bundle
+        renderBundle(intent.getExtras(), depth);
+        append("}");
+    }
+
+    void renderBundle(@Nullable final Bundle bundle, final int depth) {
+        if (bundle == null) {
+            append("null");
+            return;
+        }
+        if (depth > limits.getMaxDepth()) {
+            append("[" + TRUNCATION_MARK + "]");
+            return;
+        }
+
+        append("[");
+        int index = 0;
+        final int size = bundle.size();
+        for (String key : bundle.keySet()) {
+            if (isFull()) {
+                return;
+            }
+            if (index != 0) {
+                append(ITEM_DIVIDER);
+            }
+            if (index == limits.getMaxElements()) {
+                appendRemaining(size - index);
+                break;
+            }
+            append("\"");
+            append(key);
+            append("\":");
+            renderValue(bundle.get(key), depth);
+            index++;
+        }
+        append("]");
+    }
+
+    private void renderValue(@Nullable final Object value, final int depth) {
+        if (value == null) {
+            append("null");
+        } else if (value instanceof Bundle) {
+            renderBundle((Bundle) value, depth + 1);
+        } else if (value instanceof Intent) {
+            renderIntent((Intent) value, depth + 1);
+        } else if (value.getClass().isArray()) {
+            renderArray(value, depth + 1);
+        } else if (value instanceof Collection) {
+            renderCollection((Collection<?>) value, depth + 1);
+        } else {
+            append("\"");
+            if (value instanceof CharSequence) {
+                append((CharSequence) value);
+            } else {
+                append(String.valueOf(value));
+            }
+            append("\"");
+        }
+    }
+
+    private void renderArray(@NonNull final Object array, final int depth) {
+        if (depth > limits.getMaxDepth()) {
+            append("[" + TRUNCATION_MARK + "]");
+            return;
+        }
+
+        append("[");
+        final int length = Array.getLength(array);
+        final int rendered = Math.min(length, limits.getMaxElements());
+        for (int i = 0; i < rendered && !isFull(); i++) {
+            if (i != 0) {
+                append(ITEM_DIVIDER);
+            }
+            if (array instanceof Object[]) {
+                renderValue(((Object[]) array)[i], depth);
+            } else {
+                append("\"");
+                appendPrimitive(array, i);
+                append("\"");
+            }
+        }
+        if (rendered < length) {
+            if (rendered != 0) {
+                append(ITEM_DIVIDER);
+            }
+            appendRemaining(length - rendered);
+        }
+        append("]");
+    }
+
+    /**
+     * Appends the element of the primitive array without boxing it.
+     */
+    private void appendPrimitive(@NonNull final Object array, final int index) {
+        if (array instanceof byte[]) {
+            appendNumber(((byte[]) array)[index]);
+        } else if (array instanceof int[]) {
+            appendNumber(((int[]) array)[index]);
+        } else if (array instanceof long[]) {
+            appendNumber(((long[]) array)[index]);
+        } else if (array instanceof short[]) {
+            appendNumber(((short[]) array)[index]);
+        } else if (array instanceof char[]) {
+            append(String.valueOf(((char[]) array)[index]));
+        } else if (array instanceof boolean[]) {
+            append(((boolean[]) array)[index] ? "true" : "false");
+        } else if (array instanceof float[]) {
+            append(String.valueOf(((float[]) array)[index]));
+        } else {
+            append(String.valueOf(((double[]) array)[index]));
+        }
+    }
+
+    private void renderCollection(@NonNull final Collection<?> collection, final int depth) {
+        if (depth > limits.getMaxDepth()) {
+            append("[" + TRUNCATION_MARK + "]");
+            return;
+        }
+
+        append("[");
+        final int size = collection.size();
+        final Iterator<?> iterator = collection.iterator();
+        int index = 0;
+        for (; index < limits.getMaxElements() && iterator.hasNext() && !isFull(); index++) {
+            if (index != 0) {
+                append(ITEM_DIVIDER);
+            }
+            renderValue(iterator.next(), depth);
+        }
+        if (index < size && !isFull()) {
+            if (index != 0) {
+                append(ITEM_DIVIDER);
+            }
+            appendRemaining(size - index);
+        }
+        append("]");
+    }
+
+    private void appendRemaining(final int count) {
+        append(TRUNCATION_MARK);
+        append("(");
+        append(String.valueOf(count));
+        append(" more)");
+    }
+
+    private void appendNumber(final long number) {
+        if (isTruncated) {
+            return;
+        }
+        if (limits.getMaxLength() - builder.length() >= MAX_NUMBER_LENGTH) {
+            builder.append(number);
+        } else {
+            append(String.valueOf(number));
+        }
+    }
+
+    private boolean isFull() {
+        return isTruncated;
+    }
+
+    private void append(@Nullable final CharSequence text) {
+        if (isTruncated) {
+            return;
+        }
+
+        final CharSequence appended = text == null ? "null" : text;
+        final int available = limits.getMaxLength() - builder.length();
+        if (appended.length() <= available) {
+            builder.append(appended);
+            return;
+        }
+
+        int end = available;
+        // Don't split a surrogate pair
+        if (end > 0 && Character.isHighSurrogate(appended.charAt(end - 1))) {
+            end--;
+        }
+        builder.append(appended, 0, end).append(TRUNCATION_MARK);
+        isTruncated = true;
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2012-2015 One Platform Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onepf.opfutils;
+
+import android.util.Log;
+
+import org.onepf.opfutils.core.OPFCounter;
+import org.onepf.opfutils.core.OPFHistogram;
+import org.onepf.opfutils.core.OPFMetrics;
+
+/**
+ * Records the metrics of the library components, which are listed in {@link OPFMetrics}.
+ * <p/>
+ * Nothing is recorded while {@link OPFMetrics#isEnabled()} returns {@code false}.
+ */
+final class ComponentMetrics {
+
+    private static final String[] LEVEL_NAMES = {"verbose", "debug", "info", "warn", "error", "assert"};
+    private static final OPFCounter[] LOG_RECORDS = new OPFCounter[LEVEL_NAMES.length];
+
+    private static final OPFHistogram PREFERENCES_APPLIES
+            = OPFMetrics.histogram(OPFMetrics.PREFERENCES_APPLY_LATENCY);
+    private static final OPFCounter PACKAGE_MANAGER = OPFMetrics.counter(OPFMetrics.PACKAGE_MANAGER_CALLS);
+
+    static {
+        for (int i = 0; i < LEVEL_NAMES.length; i++) {
+            LOG_RECORDS[i] = OPFMetrics.counter(OPFMetrics.LOG_RECORDS_PREFIX + LEVEL_NAMES[i]);
+        }
+    }
+
+    private ComponentMetrics() {
+        throw new UnsupportedOperationException();
+    }
+
+    static void onLogRecord(final int level) {
+        if (OPFMetrics.isEnabled()) {
+            final int index = Math.max(0, Math.min(LOG_RECORDS.length - 1, level - Log.VERBOSE));
+            LOG_RECORDS[index].increment();
+        }
+    }
+
+    static void onPackageManagerCall() {
+        if (OPFMetrics.isEnabled()) {
+            PACKAGE_MANAGER.increment();
+        }
+    }
+
+    /**
+     * Returns the start time for {@link #onPreferencesApply(long)}, {@code 0} if the metrics are disabled.
+     */
+    static long startPreferencesApply() {
+        return OPFMetrics.isEnabled() ? System.nanoTime() : 0L;
+    }
+
+    static void onPreferencesApply(final long startTime) {
+        if (startTime != 0L) {
+            PREFERENCES_APPLIES.record(System.nanoTime() - startTime);
+        }
+    }
+}
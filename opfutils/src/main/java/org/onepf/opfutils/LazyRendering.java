@@ -0,0 +1,75 @@
+/*
+ * Copyright 2012-2015 One Platform Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onepf.opfutils;
+
+import android.content.Intent;
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import org.onepf.opfutils.core.OPFRenderLimits;
+
+/**
+ * The log argument which renders an {@link Intent} or a {@link Bundle} only when its {@link #toString()}
+ * is called, i.e. when the message is actually formatted.
+ * <p/>
+ * The rendered text is kept, so the value is rendered at most once.
+ */
+final class LazyRendering {
+
+    @Nullable
+    private final Intent intent;
+    @Nullable
+    private final Bundle bundle;
+    @Nullable
+    private final OPFRenderLimits limits;
+
+    @Nullable
+    private String text;
+
+    private LazyRendering(@Nullable final Intent intent,
+                          @Nullable final Bundle bundle,
+                          @Nullable final OPFRenderLimits limits) {
+        this.intent = intent;
+        this.bundle = bundle;
+        this.limits = limits;
+    }
+
+    @NonNull
+    static LazyRendering of(@Nullable final Intent intent, @Nullable final OPFRenderLimits limits) {
+        return new LazyRendering(intent, null, limits);
+    }
+
+    @NonNull
+    static LazyRendering of(@Nullable final Bundle bundle, @Nullable final OPFRenderLimits limits) {
+        return new LazyRendering(null, bundle, limits);
+    }
+
+    @Override
+    public String toString() {
+        String result = text;
+        if (result == null) {
+            if (intent != null) {
+                result = limits == null ? OPFUtils.toString(intent) : OPFUtils.toString(intent, limits);
+            } else {
+                result = limits == null ? OPFUtils.toString(bundle) : OPFUtils.toString(bundle, limits);
+            }
+            text = result;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright 2012-2015 One Platform Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onepf.opfutils;
+
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import org.onepf.opfutils.core.OPFLogBatchStats;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Groups the log records written during a short window into fewer, larger logcat entries.
+ * <p/>
+ * Consecutive records with the same level and tag are joined with a line break. An entry never exceeds
+ * {@link #MAX_ENTRY_BYTES} bytes, longer records are split. Records with the {@link Log#ERROR} level
+ * and higher flush the batch immediately, so they aren't lost if the process crashes.
+ * <p/>
+ * The flushed entries are reused by the next batches, so the batching doesn't allocate per record
+ * except the logged strings.
+ */
+final class LogBatcher {
+
+    /**
+     * The logcat payload limit minus the space for the priority, the tag and the terminators.
+     */
+    static final int MAX_ENTRY_BYTES = 4000;
+
+    private static final int MAX_PENDING_ENTRIES = 32;
+
+    private final long windowMillis;
+    @NonNull
+    private final ScheduledExecutorService executor;
+    @NonNull
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (pending) {
+                flushScheduled = false;
+                flushLocked();
+            }
+        }
+    };
+
+    private final List<Entry> pending = new ArrayList<Entry>();
+    private final List<Entry> recycled = new ArrayList<Entry>();
+    private boolean flushScheduled;
+    private boolean closed;
+    private long firstRecordNanos;
+    private int batchRecordCount;
+
+    private long recordCount;
+    private long batchCount;
+    private long entryCount;
+    private int maxBatchSize;
+    private long totalFlushLatencyNanos;
+    private long maxFlushLatencyNanos;
+
+    LogBatcher(final long windowMillis) {
+        if (windowMillis <= 0) {
+            throw new IllegalArgumentException("Window must be positive.");
+        }
+        this.windowMillis = windowMillis;
+        this.executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "OPFLog-batcher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    void println(final int level, @NonNull final String tag, @NonNull final String message) {
+        synchronized (pending) {
+            if (closed) {
+                // The caller has read the batcher before it was replaced
+                Log.println(level, tag, message);
+                return;
+            }
+            if (pending.isEmpty()) {
+                firstRecordNanos = System.nanoTime();
+            }
+            append(level, tag, message);
+            batchRecordCount++;
+            recordCount++;
+
+            if (level >= Log.ERROR || pending.size() >= MAX_PENDING_ENTRIES) {
+                flushLocked();
+            } else if (!flushScheduled) {
+                flushScheduled = true;
+                executor.schedule(flushTask, windowMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    void flush() {
+        synchronized (pending) {
+            flushLocked();
+        }
+    }
+
+    /**
+     * Flushes the pending records and stops the flush thread. The records written after the call
+     * are written to logcat immediately.
+     */
+    void shutdown() {
+        synchronized (pending) {
+            closed = true;
+            flushLocked();
+        }
+        executor.shutdown();
+    }
+
+    @NonNull
+    OPFLogBatchStats getStats() {
+        synchronized (pending) {
+            return new OPFLogBatchStats(recordCount, batchCount, entryCount, maxBatchSize,
+                    totalFlushLatencyNanos, maxFlushLatencyNanos);
+        }
+    }
+
+    private void append(final int level, @NonNull final String tag, @NonNull final String message) {
+        final int length = message.length();
+        int start = 0;
+        while (start < length) {
+            final int end = findChunkEnd(message, start);
+            appendChunk(level, tag, message, start, end, utf8Length(message, start, end));
+            start = end;
+            // Don't start the next chunk with the line break it was split at
+            if (start < length && message.charAt(start) == '\n') {
+                start++;
+            }
+        }
+        if (length == 0) {
+            appendChunk(level, tag, message, 0, 0, 0);
+        }
+    }
+
+    private void appendChunk(final int level,
+                             @NonNull final String tag,
+                             @NonNull final String message,
+                             final int start,
+                             final int end,
+                             final int chunkBytes) {
+        final int size = pending.size();
+        final Entry last = size == 0 ? null : pending.get(size - 1);
+        if (last != null && last.level == level && last.tag.equals(tag)
+                && last.bytes + 1 + chunkBytes <= MAX_ENTRY_BYTES) {
+            last.message.append('\n').append(message, start, end);
+            last.bytes += 1 + chunkBytes;
+        } else {
+            final int recycledSize = recycled.size();
+            final Entry entry = recycledSize == 0 ? new Entry() : recycled.remove(recycledSize - 1);
+            entry.level = level;
+            entry.tag = tag;
+            entry.message.append(message, start, end);
+            entry.bytes = chunkBytes;
+            pending.add(entry);
+        }
+    }
+
+    private void flushLocked() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        for (Entry entry : pending) {
+            Log.println(entry.level, entry.tag, entry.message.toString());
+        }
+
+        final long latencyNanos = System.nanoTime() - firstRecordNanos;
+        batchCount++;
+        entryCount += pending.size();
+        maxBatchSize = Math.max(maxBatchSize, batchRecordCount);
+        totalFlushLatencyNanos += latencyNanos;
+        maxFlushLatencyNanos = Math.max(maxFlushLatencyNanos, latencyNanos);
+
+        for (Entry entry : pending) {
+            if (recycled.size() < MAX_PENDING_ENTRIES
+                    && entry.message.capacity() <= StringBuilderPool.MAX_RETAINED_CAPACITY) {
+                entry.tag = null;
+                entry.message.setLength(0);
+                recycled.add(entry);
+            }
+        }
+        pending.clear();
+        batchRecordCount = 0;
+    }
+
+    /**
+     * Finds the end of the chunk which starts at {@code start} and fits into {@link #MAX_ENTRY_BYTES}.
+     * Prefers to split at a line break.
+     */
+    private static int findChunkEnd(@NonNull final String message, final int start) {
+        final int length = message.length();
+        int bytes = 0;
+        int lastLineBreak = -1;
+        for (int i = start; i < length; i++) {
+            final char c = message.charAt(i);
+            bytes += utf8Length(c);
+            if (bytes > MAX_ENTRY_BYTES) {
+                if (lastLineBreak > start) {
+                    return lastLineBreak;
+                }
+                // Don't split a surrogate pair
+                return Character.isLowSurrogate(c) && i - 1 > start ? i - 1 : i;
+            }
+            if (c == '\n') {
+                lastLineBreak = i;
+            }
+        }
+        return length;
+    }
+
+    private static int utf8Length(@NonNull final String message, final int start, final int end) {
+        int bytes = 0;
+        for (int i = start; i < end; i++) {
+            bytes += utf8Length(message.charAt(i));
+        }
+        return bytes;
+    }
+
+    private static int utf8Length(final char c) {
+        if (c < 0x80) {
+            return 1;
+        } else if (c < 0x800) {
+            return 2;
+        } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+            // A surrogate pair takes 4 bytes
+            return 2;
+        }
+        return 3;
+    }
+
+    private static final class Entry {
+
+        private final StringBuilder message = new StringBuilder();
+        private int level;
+        private String tag;
+        private int bytes;
+    }
+}
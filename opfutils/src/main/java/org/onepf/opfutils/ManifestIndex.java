@@ -0,0 +1,192 @@
+/*
+ * Copyright 2012-2015 One Platform Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onepf.opfutils;
+
+import android.content.Context;
+import android.content.pm.ActivityInfo;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.ServiceInfo;
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The process-wide index of the app AndroidManifest.xml: requested permissions, metadata, services and receivers.
+ * <p/>
+ * Is built lazily by a single {@link PackageManager#getPackageInfo(String, int)} call
+ * and serves all {@link OPFChecks} manifest checks from memory. Is dropped when the app package is changed
+ * or replaced, see {@link OPFChecks#registerPackageChangeReceiver(Context)}.
+ */
+final class ManifestIndex {
+
+    private static final int FLAGS = PackageManager.GET_PERMISSIONS
+            | PackageManager.GET_META_DATA
+            | PackageManager.GET_SERVICES
+            | PackageManager.GET_RECEIVERS;
+
+    private static final PackageChangeReceiver.Listener INVALIDATOR = new PackageChangeReceiver.Listener() {
+        @Override
+        public void onPackageChanged(@Nullable final String packageName) {
+            final ManifestIndex index = instance;
+            if (index != null && (packageName == null || packageName.equals(index.packageName))) {
+                invalidate();
+            }
+        }
+    };
+
+    private static final AtomicInteger GENERATION = new AtomicInteger();
+
+    @Nullable
+    private static volatile ManifestIndex instance;
+
+    static {
+        PackageChangeReceiver.addListener(INVALIDATOR);
+    }
+
+    @NonNull
+    private final String packageName;
+    private final boolean packageFound;
+    @NonNull
+    private final Set<String> permissions;
+    @Nullable
+    private final Bundle metaData;
+    @NonNull
+    private final Map<String, ServiceInfo> services;
+    @NonNull
+    private final Map<String, ActivityInfo> receivers;
+
+    private ManifestIndex(@NonNull final String packageName, @Nullable final PackageInfo packageInfo) {
+        this.packageName = packageName;
+        this.packageFound = packageInfo != null;
+        if (packageInfo == null) {
+            permissions = Collections.emptySet();
+            metaData = null;
+            services = Collections.emptyMap();
+            receivers = Collections.emptyMap();
+            return;
+        }
+
+        final Set<String> permissionSet = new HashSet<String>();
+        if (packageInfo.requestedPermissions != null) {
+            Collections.addAll(permissionSet, packageInfo.requestedPermissions);
+        }
+        permissions = Collections.unmodifiableSet(permissionSet);
+
+        metaData = packageInfo.applicationInfo == null ? null : packageInfo.applicationInfo.metaData;
+
+        final Map<String, ServiceInfo> serviceMap = new HashMap<String, ServiceInfo>();
+        if (packageInfo.services != null) {
+            for (ServiceInfo service : packageInfo.services) {
+                serviceMap.put(service.name, service);
+            }
+        }
+        services = Collections.unmodifiableMap(serviceMap);
+
+        final Map<String, ActivityInfo> receiverMap = new HashMap<String, ActivityInfo>();
+        if (packageInfo.receivers != null) {
+            for (ActivityInfo receiver : packageInfo.receivers) {
+                if (packageName.equals(receiver.packageName)) {
+                    receiverMap.put(receiver.name, receiver);
+                }
+            }
+        }
+        receivers = Collections.unmodifiableMap(receiverMap);
+    }
+
+    /**
+     * Returns the index of the app manifest. Builds it on the first call.
+     *
+     * @param context The instance of {@link Context}.
+     * @return The index of the app manifest.
+     */
+    @NonNull
+    static ManifestIndex get(@NonNull final Context context) {
+        final String packageName = context.getPackageName();
+        ManifestIndex index = instance;
+        if (index == null || !index.packageName.equals(packageName)) {
+            synchronized (ManifestIndex.class) {
+                index = instance;
+                if (index == null || !index.packageName.equals(packageName)) {
+                    final int generation = GENERATION.get();
+                    index = build(context, packageName);
+                    instance = index;
+                    // Don't keep the index built before a concurrent invalidate()
+                    if (generation != GENERATION.get()) {
+                        instance = null;
+                    }
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Drops the index, so it will be built again on the next {@link #get(Context)} call.
+     */
+    static void invalidate() {
+        GENERATION.incrementAndGet();
+        instance = null;
+    }
+
+    @NonNull
+    private static ManifestIndex build(@NonNull final Context context, @NonNull final String packageName) {
+        PackageInfo packageInfo = null;
+        ComponentMetrics.onPackageManagerCall();
+        final long startTime = OPFStartupProfiler.begin();
+        try {
+            packageInfo = context.getPackageManager().getPackageInfo(packageName, FLAGS);
+        } catch (PackageManager.NameNotFoundException e) {
+            OPFLog.e(e.getMessage());
+        }
+        OPFStartupProfiler.end(OPFStartupProfiler.MANIFEST_INDEX, packageName, startTime);
+        return new ManifestIndex(packageName, packageInfo);
+    }
+
+    @NonNull
+    String getPackageName() {
+        return packageName;
+    }
+
+    boolean isPackageFound() {
+        return packageFound;
+    }
+
+    boolean hasPermission(@NonNull final String permission) {
+        return permissions.contains(permission);
+    }
+
+    boolean hasMetadata(@NonNull final String metadataKey) {
+        return metaData != null && metaData.get(metadataKey) != null;
+    }
+
+    boolean hasService(@NonNull final String serviceName) {
+        return services.containsKey(serviceName);
+    }
+
+    @Nullable
+    ActivityInfo getReceiver(@NonNull final String receiverName) {
+        return receivers.get(receiverName);
+    }
+}
@@ -0,0 +1,336 @@
+/*
+ * Copyright 2012-2015 One Platform Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onepf.opfutils;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ResolveInfo;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.text.TextUtils;
+
+import org.onepf.opfutils.exception.CheckFailedException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * The batch check of the AndroidManifest.xml requirements. Is created via {@link OPFChecks#batch(Context)}.
+ * <p/>
+ * All requirements are declared up front and resolved together: permissions, metadata and the app services
+ * are checked against the manifest index built by a single package manager call, receivers are queried
+ * once per distinct intent unless the results are cached. Unlike the {@link OPFChecks} methods, the batch doesn't stop at the first failure
+ * and reports all problems at once.
+ * <p/>
+ * Usage:
+ * <pre>
+ * OPFChecks.batch(context)
+ *         .requirePermission(Manifest.permission.INTERNET)
+ *         .requireService(new ComponentName(context, MyService.class))
+ *         .requireReceiver(MyReceiver.class.getName(), new Intent(MY_ACTION))
+ *         .validate();
+ * </pre>
+ * To keep the validation off the critical path, e.g. {@code Application.onCreate()}, use
+ * {@link #checkAsync(Callback)} or {@link #checkAsync()} together with {@link #failFast(boolean)}.
+ */
+public final class OPFCheckBatch {
+
+    @NonNull
+    private final Context context;
+    private boolean failFast;
+    @NonNull
+    private final List<String> permissions = new ArrayList<String>();
+    @NonNull
+    private final List<String> metadataKeys = new ArrayList<String>();
+    @NonNull
+    private final List<ComponentName> services = new ArrayList<ComponentName>();
+    @NonNull
+    private final List<ReceiverRequirement> receivers = new ArrayList<ReceiverRequirement>();
+
+    OPFCheckBatch(@NonNull final Context context) {
+        this.context = context.getApplicationContext() == null ? context : context.getApplicationContext();
+    }
+
+    /**
+     * Requires the permission to be requested in the AndroidManifest.xml file.
+     * See {@link OPFChecks#checkPermission(Context, String)}.
+     */
+    @NonNull
+    public OPFCheckBatch requirePermission(@NonNull final String permission) {
+        if (TextUtils.isEmpty(permission)) {
+            throw new IllegalArgumentException("Permission can't be null or empty.");
+        }
+        permissions.add(permission);
+        return this;
+    }
+
+    /**
+     * Requires the metadata to be added in the AndroidManifest.xml file.
+     * See {@link OPFChecks#hasMetadata(Context, String)}.
+     */
+    @NonNull
+    public OPFCheckBatch requireMetadata(@NonNull final String metadataKey) {
+        if (TextUtils.isEmpty(metadataKey)) {
+            throw new IllegalArgumentException("Meta data key can't be null or empty.");
+        }
+        metadataKeys.add(metadataKey);
+        return this;
+    }
+
+    /**
+     * Requires the service to be declared in the AndroidManifest.xml file.
+     * See {@link OPFChecks#checkService(Context, ComponentName)}.
+     */
+    @NonNull
+    public OPFCheckBatch requireService(@NonNull final ComponentName service) {
+        services.add(service);
+        return this;
+    }
+
+    /**
+     * The same as {@link #requireReceiver(String, Intent, String)} with the {@code null} values
+     * for the {@code receiverName} and {@code permission} parameters.
+     */
+    @NonNull
+    public OPFCheckBatch requireReceiver(@NonNull final Intent broadcastIntent) {
+        return requireReceiver(null, broadcastIntent, null);
+    }
+
+    /**
+     * The same as {@link #requireReceiver(String, Intent, String)} with the {@code null} value
+     * for the {@code permission} parameter.
+     */
+    @NonNull
+    public OPFCheckBatch requireReceiver(@NonNull final String receiverName,
+                                         @NonNull final Intent broadcastIntent) {
+        return requireReceiver(receiverName, broadcastIntent, null);
+    }
+
+    /**
+     * Requires the receiver to be declared in the AndroidManifest.xml file.
+     * See {@link OPFChecks#checkReceiver(Context, String, Intent, String)}.
+     */
+    @NonNull
+    public OPFCheckBatch requireReceiver(@Nullable final String receiverName,
+                                         @NonNull final Intent broadcastIntent,
+                                         @Nullable final String permission) {
+        receivers.add(new ReceiverRequirement(receiverName, broadcastIntent, permission));
+        return this;
+    }
+
+    /**
+     * Sets if a failed asynchronous check should crash the app. Pass {@code BuildConfig.DEBUG}
+     * of your application to crash only in debug builds. Otherwise the problems are logged.
+     *
+     * @param failFast {@code true} if a failed asynchronous check should throw
+     *                 {@link CheckFailedException} on the main thread.
+     */
+    @NonNull
+    public OPFCheckBatch failFast(final boolean failFast) {
+        this.failFast = failFast;
+        return this;
+    }
+
+    /**
+     * Checks all declared requirements on a background thread. The batch must not be changed after the call.
+     *
+     * @return The future of the report.
+     */
+    @NonNull
+    public Future<OPFCheckReport> checkAsync() {
+        return checkAsync(null);
+    }
+
+    /**
+     * Checks all declared requirements on a background thread and delivers the report to the main thread.
+     * The batch must not be changed after the call.
+     * <p/>
+     * If the check itself fails, e.g. the package manager dies, the exception is logged, the callback receives
+     * a failed report which describes it, the exception is rethrown on the main thread if the batch
+     * {@link #failFast(boolean) fails fast}, and the future throws {@link java.util.concurrent.ExecutionException}.
+     *
+     * @param callback The callback which receives the report on the main thread, may be {@code null}.
+     * @return The future of the report.
+     */
+    @NonNull
+    public Future<OPFCheckReport> checkAsync(@Nullable final Callback callback) {
+        final FutureTask<OPFCheckReport> task = new FutureTask<OPFCheckReport>(new Callable<OPFCheckReport>() {
+            @Override
+            public OPFCheckReport call() {
+                final OPFCheckReport report;
+                try {
+                    report = check();
+                } catch (RuntimeException e) {
+                    deliverError(e, callback);
+                    throw e;
+                }
+                deliver(report, callback);
+                return report;
+            }
+        });
+        OPFExecutors.background().execute(task);
+        return task;
+    }
+
+    private void deliver(@NonNull final OPFCheckReport report, @Nullable final Callback callback) {
+        if (!report.isPassed() && !failFast) {
+            // The exception isn't created, it's thrown only if the batch fails fast
+            OPFLog.e(CheckFailedException.buildMessage(report.getProblems()));
+        }
+        if (callback == null && (report.isPassed() || !failFast)) {
+            return;
+        }
+
+        OPFExecutors.mainThread().execute(new Runnable() {
+            @Override
+            public void run() {
+                if (callback != null) {
+                    callback.onChecked(report);
+                }
+                if (failFast) {
+                    report.throwIfFailed();
+                }
+            }
+        });
+    }
+
+    private void deliverError(@NonNull final RuntimeException error, @Nullable final Callback callback) {
+        OPFLog.e("Batch check failed.", error);
+        if (callback == null && !failFast) {
+            return;
+        }
+
+        final OPFCheckReport report = new OPFCheckReport(Collections.singletonList("Check failed: " + error));
+        OPFExecutors.mainThread().execute(new Runnable() {
+            @Override
+            public void run() {
+                if (callback != null) {
+                    callback.onChecked(report);
+                }
+                if (failFast) {
+                    throw error;
+                }
+            }
+        });
+    }
+
+    /**
+     * Checks all declared requirements.
+     *
+     * @return The report which lists all failed checks.
+     */
+    @NonNull
+    public OPFCheckReport check() {
+        final List<String> problems = new ArrayList<String>();
+        final ManifestIndex manifestIndex = ManifestIndex.get(context);
+
+        for (String permission : permissions) {
+            if (!manifestIndex.hasPermission(permission)) {
+                problems.add(OPFChecks.getPermissionProblem(permission));
+            }
+        }
+
+        for (String metadataKey : metadataKeys) {
+            if (!manifestIndex.hasMetadata(metadataKey)) {
+                problems.add("Meta data " + metadataKey + " hasn't been added to AndroidManifest.xml");
+            }
+        }
+
+        for (ComponentName service : services) {
+            addIfNotNull(problems, OPFChecks.getServiceProblem(context, service));
+        }
+
+        final List<Intent> queriedIntents = new ArrayList<Intent>();
+        final List<List<ResolveInfo>> queryResults = new ArrayList<List<ResolveInfo>>();
+        final int cacheGeneration = ReceiverCache.getGeneration();
+        for (ReceiverRequirement receiver : receivers) {
+            final ReceiverCache.Key key = new ReceiverCache.Key(context, receiver.broadcastIntent,
+                    receiver.receiverName, receiver.permission);
+            List<ResolveInfo> resolveInfos = null;
+            if (!OPFChecks.isManifestOnlyReceiverCheck(receiver.broadcastIntent)
+                    && !ReceiverCache.contains(key)) {
+                final int index = indexOf(queriedIntents, receiver.broadcastIntent);
+                if (index == -1) {
+                    resolveInfos = OPFChecks.queryReceivers(context, receiver.broadcastIntent);
+                    queriedIntents.add(receiver.broadcastIntent);
+                    queryResults.add(resolveInfos);
+                } else {
+                    resolveInfos = queryResults.get(index);
+                }
+            }
+            addIfNotNull(problems, OPFChecks.getReceiverProblem(context, receiver.receiverName,
+                    receiver.broadcastIntent, receiver.permission, resolveInfos, cacheGeneration));
+        }
+
+        return new OPFCheckReport(problems);
+    }
+
+    /**
+     * Checks all declared requirements and throws {@link org.onepf.opfutils.exception.CheckFailedException}
+     * which lists all problems if any check failed.
+     */
+    public void validate() {
+        check().throwIfFailed();
+    }
+
+    private static int indexOf(@NonNull final List<Intent> intents, @NonNull final Intent intent) {
+        final int size = intents.size();
+        for (int i = 0; i < size; i++) {
+            if (intents.get(i).filterEquals(intent)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static void addIfNotNull(@NonNull final List<String> problems, @Nullable final String problem) {
+        if (problem != null) {
+            problems.add(problem);
+        }
+    }
+
+    private static final class ReceiverRequirement {
+
+        @Nullable
+        private final String receiverName;
+        @NonNull
+        private final Intent broadcastIntent;
+        @Nullable
+        private final String permission;
+
+        private ReceiverRequirement(@Nullable final String receiverName,
+                                    @NonNull final Intent broadcastIntent,
+                                    @Nullable final String permission) {
+            this.receiverName = receiverName;
+            this.broadcastIntent = broadcastIntent;
+            this.permission = permission;
+        }
+    }
+
+    /**
+     * Receives the report of {@link #checkAsync(Callback)} on the main thread.
+     */
+    public interface Callback {
+
+        void onChecked(@NonNull OPFCheckReport report);
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2012-2015 One Platform Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onepf.opfutils;
+
+import android.support.annotation.NonNull;
+
+import org.onepf.opfutils.exception.CheckFailedException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The result of a {@link OPFCheckBatch}. Lists all failed checks.
+ */
+public final class OPFCheckReport {
+
+    @NonNull
+    private final List<String> problems;
+
+    OPFCheckReport(@NonNull final List<String> problems) {
+        this.problems = Collections.unmodifiableList(new ArrayList<String>(problems));
+    }
+
+    /**
+     * Returns {@code true} if all checks passed.
+     *
+     * @return {@code true} if all checks passed, {@code false} otherwise.
+     */
+    public boolean isPassed() {
+        return problems.isEmpty();
+    }
+
+    /**
+     * Returns the descriptions of the failed checks.
+     *
+     * @return The unmodifiable list of the problems, empty if all checks passed.
+     */
+    @NonNull
+    public List<String> getProblems() {
+        return problems;
+    }
+
+    /**
+     * Throws {@link CheckFailedException} which lists all problems if any check failed.
+     */
+    public void throwIfFailed() {
+        if (!problems.isEmpty()) {
+            throw new CheckFailedException(problems);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "OPFCheckReport{problems=" + problems + '}';
+    }
+}
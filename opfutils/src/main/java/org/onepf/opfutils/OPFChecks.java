@@ -19,11 +19,8 @@ package org.onepf.opfutils;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
-import android.content.pm.ActivityInfo;
-import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
-import android.os.Bundle;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.text.TextUtils;
@@ -57,53 +54,105 @@ public final class OPFChecks {
         }
     }
 
+    /**
+     * Registers the receiver of the package change broadcasts which drops the cached manifest index and
+     * receiver check results when the app package is changed, e.g. when the app enables or disables
+     * its components.
+     * <p/>
+     * Without the receiver the results are cached for the process lifetime. The app process is restarted
+     * when the app is updated anyway. Note that the receiver is woken up by the changes of all packages
+     * on the device.
+     *
+     * @param context The instance of {@link android.content.Context}.
+     */
+    public static void registerPackageChangeReceiver(@NonNull final Context context) {
+        PackageChangeReceiver.register(context);
+    }
+
     /**
      * Checks is a service has been described in the AndroidManifest.xml file.
+     * <p/>
+     * The services of the app package are checked against the cached manifest index.
      *
      * @param context The instance of {@link android.content.Context}.
      * @param service The checked service.
      */
-    @SuppressWarnings("PMD.PreserveStackTrace")
     public static void checkService(@NonNull final Context context,
                                     @NonNull final ComponentName service) {
-        final PackageManager packageManager = context.getPackageManager();
+        final String problem = getServiceProblem(context, service);
+        if (problem != null) {
+            throw new IllegalStateException(problem);
+        }
+    }
+
+    private static boolean isServiceDeclared(@NonNull final Context context,
+                                             @NonNull final ComponentName service) {
+        ComponentMetrics.onPackageManagerCall();
         try {
-            packageManager.getServiceInfo(service, 0);
-        } catch (PackageManager.NameNotFoundException e) {
-            throw new IllegalStateException("Service " + service.getClassName()
-                    + " hasn't been declared in AndroidManifest.xml");
+            context.getPackageManager().getServiceInfo(service, 0);
+            return true;
+        } catch (PackageManager.NameNotFoundException ignore) {
+            return false;
         }
     }
 
     /**
      * Similar to {@link #checkPermission(Context, String)} but instead of throwing exception returns false if
-     * permission is not granted.
+     * permission is not requested.
+     * <p/>
+     * Uses the cached manifest index. Checks only that the permission is requested in the AndroidManifest.xml file,
+     * not that it's granted at runtime. Use {@link #isPermissionGranted(Context, String)} to check the runtime
+     * permission state.
      *
-     * @return True if supplied permission is granted, false otherwise.
+     * @return True if supplied permission is requested in the AndroidManifest.xml file, false otherwise.
      */
     public static boolean hasPermission(@NonNull final Context context,
                                         @NonNull final String permission) {
-        //TODO Update to new (M preview) permission model https://developer.android.com/preview/features/runtime-permissions.html#coding
         if (TextUtils.isEmpty(permission)) {
             throw new IllegalArgumentException("Permission can't be null or empty.");
         }
 
-        try {
-            final PackageInfo info = context.getPackageManager()
-                    .getPackageInfo(context.getPackageName(), PackageManager.GET_PERMISSIONS);
-            final String[] requestedPermissions = info.requestedPermissions;
-            if (requestedPermissions != null) {
-                for (String requestedPermission : requestedPermissions) {
-                    if (TextUtils.equals(permission, requestedPermission)) {
-                        return true;
-                    }
-                }
-            }
-        } catch (PackageManager.NameNotFoundException ignore) {
-            // ignore
+        return ManifestIndex.get(context).hasPermission(permission);
+    }
+
+    /**
+     * Returns {@code true} if the permission is granted to the app at runtime.
+     * <p/>
+     * Only the granted states are cached in memory, because a revoked permission kills the app process.
+     * A denied permission is queried on every call, so the result is up to date right after
+     * a permission request result is received.
+     *
+     * @param context    The instance of {@link android.content.Context}.
+     * @param permission The checked permission.
+     * @return {@code true} if the permission is granted, {@code false} otherwise.
+     */
+    public static boolean isPermissionGranted(@NonNull final Context context,
+                                              @NonNull final String permission) {
+        if (TextUtils.isEmpty(permission)) {
+            throw new IllegalArgumentException("Permission can't be null or empty.");
         }
+        return PermissionCache.isGranted(context, permission);
+    }
 
-        return false;
+    /**
+     * Queries the states of all denied runtime permissions again on a background thread.
+     * The {@link PermissionListener}s are notified about the granted ones on the main thread.
+     */
+    public static void refreshPermissions() {
+        PermissionCache.refresh();
+    }
+
+    /**
+     * Adds the listener which is notified when a denied runtime permission is found granted on refresh.
+     *
+     * @param listener The added listener.
+     */
+    public static void addPermissionListener(@NonNull final PermissionListener listener) {
+        PermissionCache.addListener(listener);
+    }
+
+    public static void removePermissionListener(@NonNull final PermissionListener listener) {
+        PermissionCache.removeListener(listener);
     }
 
     /**
@@ -112,21 +161,19 @@ public final class OPFChecks {
      */
     public static void checkPermission(@NonNull final Context context,
                                        @NonNull final String permission) {
-        checkPermission(
-                context,
-                permission,
-                String.format(
-                        Locale.US,
-                        "You must add %s permission to the AndroidManifest.xml",
-                        permission
-                )
-        );
+        checkPermission(context, permission, getPermissionProblem(permission));
+    }
+
+    @NonNull
+    static String getPermissionProblem(@NonNull final String permission) {
+        return String.format(Locale.US, "You must add %s permission to the AndroidManifest.xml", permission);
     }
 
     /**
      * Checks if supplied permission is requested in AndroidManifest.xml file.
      * <p/>
-     * Throws {@link SecurityException} if it's not.
+     * Throws {@link SecurityException} if it's not. Doesn't check that the permission is granted at runtime,
+     * see {@link #isPermissionGranted(Context, String)}.
      *
      * @param context          The instance of {@link android.content.Context}.
      * @param permission       The checked permission.
@@ -142,6 +189,8 @@ public final class OPFChecks {
 
     /**
      * Checks if metadata is added in AndroidManifest.xml file.
+     * <p/>
+     * Uses the cached manifest index.
      *
      * @param context     The instance of {@link android.content.Context}.
      * @param metadataKey The checked metadata key.
@@ -152,17 +201,7 @@ public final class OPFChecks {
             throw new IllegalArgumentException("Meta data key can't be null or empty.");
         }
 
-        try {
-            final PackageInfo info = context.getPackageManager()
-                    .getPackageInfo(context.getPackageName(), PackageManager.GET_META_DATA);
-            final Bundle metaData = info.applicationInfo.metaData;
-            if (metaData != null && metaData.get(metadataKey) != null) {
-                return true;
-            }
-        } catch (PackageManager.NameNotFoundException e) {
-            //ignore
-        }
-        return false;
+        return ManifestIndex.get(context).hasMetadata(metadataKey);
     }
 
     /**
@@ -215,25 +254,111 @@ public final class OPFChecks {
                                      @Nullable final String receiverName,
                                      @NonNull final Intent broadcastIntent,
                                      @Nullable final String permission) {
-        if (Intent.ACTION_BOOT_COMPLETED.equals(broadcastIntent.getAction())) {
-            //If user has device with root rights, he can disable auto start for your application.
-            //In this case queryBroadcastReceivers() method doesn't return any receivers which is registered on ACTION_BOOT_COMPLETED.
-            //So we check it via package info by receiverName without intent filter checking.
-            checkReceiverInManifest(context, receiverName);
-            return;
+        final String problem = getReceiverProblem(context, receiverName, broadcastIntent, permission, null,
+                ReceiverCache.getGeneration());
+        if (problem != null) {
+            throw new IllegalStateException(problem);
+        }
+    }
+
+    /**
+     * Creates the batch check which validates all declared requirements in a single pass.
+     *
+     * @param context The instance of {@link android.content.Context}.
+     * @return The new batch check.
+     */
+    @NonNull
+    public static OPFCheckBatch batch(@NonNull final Context context) {
+        return new OPFCheckBatch(context);
+    }
+
+    @Nullable
+    static String getServiceProblem(@NonNull final Context context,
+                                    @NonNull final ComponentName service) {
+        final boolean isDeclared;
+        final ManifestIndex manifestIndex = ManifestIndex.get(context);
+        if (manifestIndex.getPackageName().equals(service.getPackageName())) {
+            isDeclared = manifestIndex.hasService(service.getClassName());
+        } else {
+            isDeclared = isServiceDeclared(context, service);
         }
 
-        final PackageManager packageManager = context.getPackageManager();
+        return isDeclared ? null : "Service " + service.getClassName()
+                + " hasn't been declared in AndroidManifest.xml";
+    }
+
+    /**
+     * Returns {@code true} if the receiver check must be done via the manifest without intent filter checking.
+     */
+    static boolean isManifestOnlyReceiverCheck(@NonNull final Intent broadcastIntent) {
+        //If user has device with root rights, he can disable auto start for your application.
+        //In this case queryBroadcastReceivers() method doesn't return any receivers which is registered on ACTION_BOOT_COMPLETED.
+        //So we check it via package info by receiverName without intent filter checking.
+        return Intent.ACTION_BOOT_COMPLETED.equals(broadcastIntent.getAction());
+    }
 
-        final List<ResolveInfo> receivers = packageManager
-                .queryBroadcastReceivers(broadcastIntent, PackageManager.GET_INTENT_FILTERS);
-        if (receivers == null || receivers.isEmpty()) {
-            throw new IllegalStateException("No receivers for intent "
-                    + OPFUtils.toString(broadcastIntent));
+    /**
+     * Queries the receivers of the app package which can handle the intent.
+     */
+    @Nullable
+    static List<ResolveInfo> queryReceivers(@NonNull final Context context,
+                                            @NonNull final Intent broadcastIntent) {
+        Intent queryIntent = broadcastIntent;
+        if (broadcastIntent.getPackage() == null && broadcastIntent.getComponent() == null) {
+            // Don't resolve receivers of all installed apps, only the app ones are checked
+            queryIntent = new Intent(broadcastIntent).setPackage(context.getPackageName());
+        }
+        ComponentMetrics.onPackageManagerCall();
+        return context.getPackageManager().queryBroadcastReceivers(queryIntent, 0);
+    }
+
+    /**
+     * Returns the description of the receiver check failure. The results are cached.
+     *
+     * @param receivers       The result of {@link #queryReceivers(Context, Intent)} for the {@code broadcastIntent},
+     *                        is queried if {@code null} and there is no cached result.
+     * @param cacheGeneration The {@link ReceiverCache#getGeneration()} value read before {@code receivers}
+     *                        were queried.
+     * @return The failure description or {@code null} if the check passed.
+     */
+    @Nullable
+    static String getReceiverProblem(@NonNull final Context context,
+                                     @Nullable final String receiverName,
+                                     @NonNull final Intent broadcastIntent,
+                                     @Nullable final String permission,
+                                     @Nullable final List<ResolveInfo> receivers,
+                                     final int cacheGeneration) {
+        if (isManifestOnlyReceiverCheck(broadcastIntent)) {
+            return getManifestReceiverProblem(context, receiverName);
+        }
+
+        final ReceiverCache.Key key = new ReceiverCache.Key(context, broadcastIntent, receiverName, permission);
+        final String cachedResult = ReceiverCache.get(key);
+        if (cachedResult != null) {
+            return ReceiverCache.isPassed(cachedResult) ? null : cachedResult;
+        }
+
+        final List<ResolveInfo> resolvedReceivers = receivers == null
+                ? queryReceivers(context, broadcastIntent)
+                : receivers;
+        final String problem = findReceiverProblem(context, receiverName, broadcastIntent,
+                permission, resolvedReceivers);
+        ReceiverCache.put(key, problem, cacheGeneration);
+        return problem;
+    }
+
+    @Nullable
+    private static String findReceiverProblem(@NonNull final Context context,
+                                              @Nullable final String receiverName,
+                                              @NonNull final Intent broadcastIntent,
+                                              @Nullable final String permission,
+                                              @Nullable final List<ResolveInfo> resolvedReceivers) {
+        if (resolvedReceivers == null || resolvedReceivers.isEmpty()) {
+            return "No receivers for intent " + OPFUtils.toString(broadcastIntent);
         }
 
         ResolveInfo neededReceiver = null;
-        for (ResolveInfo receiver : receivers) {
+        for (ResolveInfo receiver : resolvedReceivers) {
             final boolean isRightName = receiverName == null
                     || receiver.activityInfo.name.equals(receiverName);
 
@@ -244,43 +369,37 @@ public final class OPFChecks {
         }
 
         if (neededReceiver == null) {
-            throw new IllegalStateException("Receiver " + receiverName
-                    + " hasn't been declared in AndroidManifest.xml");
+            return "Receiver " + receiverName + " hasn't been declared in AndroidManifest.xml";
         }
 
         if (permission != null
                 && !permission.equals(neededReceiver.activityInfo.permission)) {
-            throw new IllegalStateException("There is no permission "
-                    + permission
-                    + " for receiver "
-                    + receiverName);
+            return "There is no permission " + permission + " for receiver " + receiverName;
         }
+        return null;
     }
 
-    private static void checkReceiverInManifest(@NonNull final Context context,
-                                                @Nullable final String receiverName) {
+    @Nullable
+    private static String getManifestReceiverProblem(@NonNull final Context context,
+                                                     @Nullable final String receiverName) {
         if (receiverName == null) {
-            return;
+            return null;
         }
 
-        final String packageName = context.getPackageName();
-        final PackageManager packageManager = context.getPackageManager();
-        PackageInfo receiversInfo;
-        try {
-            receiversInfo = packageManager.getPackageInfo(
-                    packageName, PackageManager.GET_RECEIVERS);
-        } catch (PackageManager.NameNotFoundException e) {
-            OPFLog.e(e.getMessage());
-            return;
+        final ManifestIndex manifestIndex = ManifestIndex.get(context);
+        if (!manifestIndex.isPackageFound() || manifestIndex.getReceiver(receiverName) != null) {
+            return null;
         }
-        final ActivityInfo[] receivers = receiversInfo.receivers;
 
-        for (ActivityInfo receiver : receivers) {
-            if (receiverName.equals(receiver.name) && packageName.equals(receiver.packageName)) {
-                return;
-            }
-        }
+        return "Receiver " + receiverName + " hasn't been declared in AndroidManifest.xml";
+    }
+
+    /**
+     * Is notified on the main thread when a runtime permission denied on
+     * {@link #isPermissionGranted(Context, String)} call is found granted by {@link #refreshPermissions()}.
+     */
+    public interface PermissionListener {
 
-        throw new IllegalStateException("Receiver " + receiverName + " hasn't been declared in AndroidManifest.xml");
+        void onPermissionChanged(@NonNull String permission, boolean isGranted);
     }
 }
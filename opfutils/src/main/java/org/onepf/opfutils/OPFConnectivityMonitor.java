@@ -0,0 +1,162 @@
+/*
+ * Copyright 2012-2015 One Platform Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onepf.opfutils;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The opt-in monitor of the network connectivity.
+ * <p/>
+ * When the monitor is started, the connectivity state is updated by the
+ * {@link ConnectivityManager#CONNECTIVITY_ACTION} broadcasts and {@link OPFUtils#isConnected(Context)}
+ * returns the cached state instead of querying the {@link ConnectivityManager}.
+ * <p/>
+ * Requires the {@link android.Manifest.permission#ACCESS_NETWORK_STATE} permission.
+ */
+public final class OPFConnectivityMonitor {
+
+    private static final List<Listener> LISTENERS = new CopyOnWriteArrayList<Listener>();
+
+    @Nullable
+    private static Context appContext;
+    @Nullable
+    private static BroadcastReceiver receiver;
+
+    private static volatile boolean isStarted;
+    private static volatile boolean isConnected;
+
+    private OPFConnectivityMonitor() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Starts the monitor if it hasn't been started yet.
+     *
+     * @param context The instance of {@link Context}.
+     * @throws SecurityException If a caller doesn't have the
+     *                           {@link android.Manifest.permission#ACCESS_NETWORK_STATE} permission.
+     */
+    public static synchronized void start(@NonNull final Context context) {
+        if (isStarted) {
+            return;
+        }
+
+        final Context applicationContext = context.getApplicationContext();
+        appContext = applicationContext == null ? context : applicationContext;
+        isConnected = queryConnected(appContext);
+        receiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(final Context context, final Intent intent) {
+                updateState(queryConnected(context));
+            }
+        };
+        appContext.registerReceiver(receiver, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+        isStarted = true;
+    }
+
+    /**
+     * Stops the monitor. {@link OPFUtils#isConnected(Context)} queries the {@link ConnectivityManager} again.
+     */
+    public static synchronized void stop() {
+        if (!isStarted) {
+            return;
+        }
+
+        isStarted = false;
+        if (appContext != null && receiver != null) {
+            appContext.unregisterReceiver(receiver);
+        }
+        appContext = null;
+        receiver = null;
+    }
+
+    public static boolean isStarted() {
+        return isStarted;
+    }
+
+    /**
+     * Returns the last known connectivity state.
+     *
+     * @return {@code true} if there was an active connection after the last connectivity change.
+     * @throws IllegalStateException If the monitor isn't started.
+     */
+    public static boolean isConnected() {
+        if (!isStarted) {
+            throw new IllegalStateException("Connectivity monitor isn't started.");
+        }
+        return isConnected;
+    }
+
+    /**
+     * Adds the listener which is notified on the main thread when the connectivity state is changed.
+     *
+     * @param listener The added listener.
+     */
+    public static void addListener(@NonNull final Listener listener) {
+        if (!LISTENERS.contains(listener)) {
+            LISTENERS.add(listener);
+        }
+    }
+
+    public static void removeListener(@NonNull final Listener listener) {
+        LISTENERS.remove(listener);
+    }
+
+    /**
+     * Returns the cached state if the monitor is started, or queries the {@link ConnectivityManager} otherwise.
+     */
+    static boolean isConnected(@NonNull final Context context) {
+        return isStarted ? isConnected : queryConnected(context);
+    }
+
+    private static boolean queryConnected(@NonNull final Context context) {
+        final Object service = context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        final ConnectivityManager cm = (ConnectivityManager) service;
+        final NetworkInfo netInfo = cm.getActiveNetworkInfo();
+        return netInfo != null && netInfo.isConnected();
+    }
+
+    private static void updateState(final boolean connected) {
+        if (connected == isConnected) {
+            return;
+        }
+
+        isConnected = connected;
+        OPFLog.d("Connectivity changed, connected: %s", connected);
+        for (Listener listener : LISTENERS) {
+            listener.onConnectivityChanged(connected);
+        }
+    }
+
+    /**
+     * Is notified when the connectivity state is changed.
+     */
+    public interface Listener {
+
+        void onConnectivityChanged(boolean isConnected);
+    }
+}
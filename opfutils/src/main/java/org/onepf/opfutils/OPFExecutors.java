@@ -0,0 +1,212 @@
+/*
+ * Copyright 2012-2015 One Platform Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onepf.opfutils;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Process;
+import android.support.annotation.NonNull;
+
+import org.onepf.opfutils.core.OPFGauge;
+import org.onepf.opfutils.core.OPFHistogram;
+import org.onepf.opfutils.core.OPFMetrics;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The executors shared by the OPF libraries.
+ * <p/>
+ * {@link #background()} runs the tasks on a bounded pool of daemon threads named "OPFUtils #N" with
+ * the background priority. The threads are stopped when there are no tasks.
+ * <p/>
+ * {@link #mainThread()} runs the tasks on the main thread. The task is run immediately if it's submitted
+ * from the main thread. Otherwise it's queued, and all tasks queued before the main thread gets to them
+ * are run by a single {@link Handler} message.
+ * <p/>
+ * The queue depths and the wait times are recorded in {@link OPFMetrics}.
+ */
+public final class OPFExecutors {
+
+    private static final int MIN_BACKGROUND_THREADS = 2;
+    private static final int MAX_BACKGROUND_THREADS = 4;
+    private static final long KEEP_ALIVE_SECONDS = 30;
+    private static final String THREAD_NAME_PREFIX = "OPFUtils #";
+
+    private OPFExecutors() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Returns the shared background executor.
+     *
+     * @return The executor which runs the tasks on the background threads.
+     */
+    @NonNull
+    public static Executor background() {
+        return BackgroundExecutor.INSTANCE;
+    }
+
+    /**
+     * Returns the main thread executor.
+     *
+     * @return The executor which runs the tasks on the main thread.
+     */
+    @NonNull
+    public static Executor mainThread() {
+        return MainThreadExecutor.INSTANCE;
+    }
+
+    private static final class BackgroundExecutor implements Executor {
+
+        static final BackgroundExecutor INSTANCE = new BackgroundExecutor();
+
+        @NonNull
+        private final ThreadPoolExecutor executor;
+        @NonNull
+        private final OPFHistogram waitTime = OPFMetrics.histogram(OPFMetrics.BACKGROUND_WAIT_TIME);
+
+        private BackgroundExecutor() {
+            final int threadCount = Math.max(MIN_BACKGROUND_THREADS,
+                    Math.min(MAX_BACKGROUND_THREADS, Runtime.getRuntime().availableProcessors() - 1));
+            executor = new ThreadPoolExecutor(threadCount, threadCount, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new BackgroundThreadFactory());
+            executor.allowCoreThreadTimeOut(true);
+            OPFMetrics.gauge(OPFMetrics.BACKGROUND_QUEUE_DEPTH, new OPFGauge() {
+                @Override
+                public long getValue() {
+                    return executor.getQueue().size();
+                }
+            });
+        }
+
+        @Override
+        public void execute(@NonNull final Runnable task) {
+            executor.execute(OPFMetrics.isEnabled() ? new TimedTask(task, waitTime) : task);
+        }
+    }
+
+    private static final class BackgroundThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(@NonNull final Runnable runnable) {
+            final Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, THREAD_NAME_PREFIX + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    private static final class MainThreadExecutor implements Executor, Handler.Callback {
+
+        static final MainThreadExecutor INSTANCE = new MainThreadExecutor();
+
+        private static final int MSG_RUN_TASKS = 1;
+
+        @NonNull
+        private final Handler handler = new Handler(Looper.getMainLooper(), this);
+        @NonNull
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+        @NonNull
+        private final AtomicInteger queueDepth = new AtomicInteger();
+        @NonNull
+        private final AtomicBoolean isScheduled = new AtomicBoolean();
+        @NonNull
+        private final OPFHistogram waitTime = OPFMetrics.histogram(OPFMetrics.MAIN_THREAD_WAIT_TIME);
+
+        private MainThreadExecutor() {
+            OPFMetrics.gauge(OPFMetrics.MAIN_THREAD_QUEUE_DEPTH, new OPFGauge() {
+                @Override
+                public long getValue() {
+                    return queueDepth.get();
+                }
+            });
+        }
+
+        @Override
+        public void execute(@NonNull final Runnable task) {
+            if (OPFUtils.isMainThread()) {
+                task.run();
+                return;
+            }
+            // Counted before it's queued, so the main thread never decrements the depth below zero
+            queueDepth.incrementAndGet();
+            tasks.offer(OPFMetrics.isEnabled() ? new TimedTask(task, waitTime) : task);
+            schedule();
+        }
+
+        @Override
+        public boolean handleMessage(final Message msg) {
+            isScheduled.set(false);
+            // Runs only the tasks queued so far, the later ones are run by the next message
+            int count = queueDepth.get();
+            try {
+                Runnable task;
+                while (count-- > 0 && (task = tasks.poll()) != null) {
+                    queueDepth.decrementAndGet();
+                    task.run();
+                }
+            } finally {
+                if (!tasks.isEmpty()) {
+                    schedule();
+                }
+            }
+            return true;
+        }
+
+        private void schedule() {
+            if (isScheduled.compareAndSet(false, true)) {
+                handler.sendEmptyMessage(MSG_RUN_TASKS);
+            }
+        }
+    }
+
+    private static final class TimedTask implements Runnable {
+
+        @NonNull
+        private final Runnable task;
+        @NonNull
+        private final OPFHistogram waitTime;
+        private final long submitTime = System.nanoTime();
+
+        TimedTask(@NonNull final Runnable task, @NonNull final OPFHistogram waitTime) {
+            this.task = task;
+            this.waitTime = waitTime;
+        }
+
+        @Override
+        public void run() {
+            waitTime.record(System.nanoTime() - submitTime);
+            task.run();
+        }
+    }
+}
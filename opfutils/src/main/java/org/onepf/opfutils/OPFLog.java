@@ -20,6 +20,16 @@ import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.util.Log;
 
+import org.onepf.opfutils.core.OPFHistogram;
+import org.onepf.opfutils.core.OPFLogBatchStats;
+import org.onepf.opfutils.core.OPFLogEvent;
+import org.onepf.opfutils.core.OPFLogSink;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static android.util.Log.ASSERT;
 import static android.util.Log.DEBUG;
 import static android.util.Log.ERROR;
 import static android.util.Log.INFO;
@@ -30,32 +40,82 @@ import static android.util.Log.WARN;
  * Is used for logging the OPF libraries.
  * Doesn't log anything, if is no enabled. Turns off debug logs in a release build.
  * Uses "OPF" log tag.
+ * <p/>
+ * Use {@link #getLogger(String)} to log a component with its own tag and level.
  */
 @SuppressWarnings("PMD.ShortMethodName")
 public final class OPFLog {
 
     private static final String TAG = "OPF";
     private static final String PACKAGE_NAME = OPFLog.class.getPackage().getName();
-
-    private static boolean isDebug;
-    private static boolean enabled;
+    private static final int THROWABLE_CACHE_CAPACITY = 64;
+    private static final ThrowableDeduplicator THROWABLES
+            = new ThrowableDeduplicator(THROWABLE_CACHE_CAPACITY);
+
+    private static final Map<String, Integer> LEVELS = new ConcurrentHashMap<String, Integer>();
+    private static final ConcurrentMap<String, OPFLogger> LOGGERS = new ConcurrentHashMap<String, OPFLogger>();
+
+    private static volatile boolean isDebug;
+    private static volatile boolean enabled;
+    private static volatile boolean deduplicateThrowables = true;
+    @Nullable
+    private static volatile OPFLogSink sink;
+    @Nullable
+    private static volatile LogBatcher batcher;
+
+    private static final OPFLogger DEFAULT_LOGGER = getLogger(TAG);
+
+    static {
+        OPFLogEvent.setDispatcher(new OPFLogEvent.Dispatcher() {
+            @Override
+            public void dispatch(@NonNull final OPFLogEvent event) {
+                log(event);
+            }
+        });
+    }
 
     private OPFLog() {
         throw new UnsupportedOperationException();
     }
 
     private static boolean shouldLog(final int level) {
-        return isDebug && level <= DEBUG && enabled
-                // Don't log debug messages in release build
-                || level > DEBUG && enabled
-                // Log if logging is enabled or allowed for current tag
-                || Log.isLoggable(TAG, level);
+        return DEFAULT_LOGGER.isLoggable(level);
+    }
+
+    private static int resolveMinLevel(@NonNull final String tag) {
+        final Integer configuredLevel = LEVELS.get(tag);
+        if (configuredLevel != null) {
+            return configuredLevel;
+        }
+
+        int minLevel = OPFLogger.SILENT;
+        if (enabled) {
+            // Don't log debug messages in release build
+            minLevel = isDebug ? VERBOSE : INFO;
+        }
+        // Log if logging is allowed for the tag
+        for (int level = VERBOSE; level < minLevel && level <= ASSERT; level++) {
+            if (Log.isLoggable(tag, level)) {
+                return level;
+            }
+        }
+        return minLevel;
+    }
+
+    static void println(final int level, @NonNull final String tag, @NonNull final String message) {
+        ComponentMetrics.onLogRecord(level);
+        final LogBatcher currentBatcher = batcher;
+        if (currentBatcher == null) {
+            Log.println(level, tag, message);
+        } else {
+            currentBatcher.println(level, tag, message);
+        }
     }
 
     private static void log(final int level,
                             @Nullable final String message) {
         if (shouldLog(level)) {
-            Log.println(level, TAG, String.valueOf(message));
+            println(level, TAG, String.valueOf(message));
         }
     }
 
@@ -63,17 +123,33 @@ public final class OPFLog {
                             @Nullable final String message,
                             @NonNull final Throwable throwable) {
         if (shouldLog(level)) {
-            Log.println(level, TAG, message + "\n" + Log.getStackTraceString(throwable));
+            println(level, TAG, message + "\n" + renderThrowable(throwable));
         }
     }
 
+    static String renderThrowable(@NonNull final Throwable throwable) {
+        return deduplicateThrowables
+                ? THROWABLES.render(throwable)
+                : Log.getStackTraceString(throwable);
+    }
+
     //Seems like PMD bug
     @SuppressWarnings("PMD.UnusedPrivateMethod")
     private static void log(final int level,
                             @NonNull final String messageFormat,
                             @Nullable final Object... args) {
         if (shouldLog(level)) {
-            Log.println(level, TAG, String.format(messageFormat, args));
+            println(level, TAG, String.format(messageFormat, args));
+        }
+    }
+
+    static void log(@NonNull final OPFLogEvent event) {
+        final OPFLogSink currentSink = sink;
+        if (currentSink != null) {
+            currentSink.write(event.encode());
+        }
+        if (shouldLog(event.getLevel())) {
+            println(event.getLevel(), TAG, event.toString());
         }
     }
 
@@ -89,31 +165,39 @@ public final class OPFLog {
         return stackTrace[stackTrace.length - 1];
     }
 
+    private static String getSimpleClassName(@NonNull final StackTraceElement traceElement) {
+        final String className = traceElement.getClassName();
+        return className.substring(className.lastIndexOf('.') + 1);
+    }
+
     private static String getMethodLog(@Nullable final Object... args) {
         final StackTraceElement[] stackTrace = Thread.currentThread().getStackTrace();
         final StackTraceElement traceElement = getTraceElement(stackTrace);
         final String className = traceElement.getClassName();
-        final String simpleClassName = className.replaceAll(".*\\.", "");
-        final String methodName = traceElement.getMethodName();
-        final StringBuilder stringBuilder = new StringBuilder()
-                .append("--> ")
-                .append(simpleClassName)
-                .append(".")
-                .append(methodName)
-                .append("(");
-
-        if (args != null) {
-            final int length = args.length;
-            for (int i = 0; i < length; i++) {
-                if (i != 0) {
-                    stringBuilder.append(", ");
+        final StringBuilder stringBuilder = StringBuilderPool.obtain();
+        try {
+            stringBuilder
+                    .append("--> ")
+                    .append(className, className.lastIndexOf('.') + 1, className.length())
+                    .append(".")
+                    .append(traceElement.getMethodName())
+                    .append("(");
+
+            if (args != null) {
+                final int length = args.length;
+                for (int i = 0; i < length; i++) {
+                    if (i != 0) {
+                        stringBuilder.append(", ");
+                    }
+                    stringBuilder.append(args[i]);
                 }
-                stringBuilder.append(args[i]);
             }
-        }
 
-        stringBuilder.append(");");
-        return stringBuilder.toString();
+            stringBuilder.append(");");
+            return stringBuilder.toString();
+        } finally {
+            StringBuilderPool.release(stringBuilder);
+        }
     }
 
     /**
@@ -134,6 +218,149 @@ public final class OPFLog {
     public static void setEnabled(final boolean isDebug, final boolean enabled) {
         OPFLog.isDebug = isDebug;
         OPFLog.enabled = enabled;
+        refreshLevels();
+    }
+
+    /**
+     * Returns the logger for the supplied tag. The logger is created once and cached.
+     * <p/>
+     * By default the logger follows the {@link #setEnabled(boolean, boolean)} settings
+     * and the {@code log.tag.<tag>} system property.
+     *
+     * @param tag The log tag, from 1 to 23 characters long.
+     * @return The logger for the tag.
+     */
+    @NonNull
+    public static OPFLogger getLogger(@NonNull final String tag) {
+        OPFLogger logger = LOGGERS.get(tag);
+        if (logger == null) {
+            final OPFLogger newLogger = new OPFLogger(tag);
+            newLogger.setMinLevel(resolveMinLevel(tag));
+            logger = LOGGERS.putIfAbsent(tag, newLogger);
+            if (logger == null) {
+                logger = newLogger;
+            }
+        }
+        return logger;
+    }
+
+    /**
+     * Sets the minimum loggable level for the supplied tag regardless of the global settings.
+     *
+     * @param tag   The log tag.
+     * @param level The minimum loggable level, e.g. {@link Log#WARN}, or {@link OPFLogger#SILENT}
+     *              to suppress all logs with the tag.
+     */
+    public static void setLevel(@NonNull final String tag, final int level) {
+        LEVELS.put(tag, level);
+        final OPFLogger logger = LOGGERS.get(tag);
+        if (logger != null) {
+            logger.setMinLevel(level);
+        }
+    }
+
+    /**
+     * Removes the level set via {@link #setLevel(String, int)}, so the tag follows the global settings again.
+     *
+     * @param tag The log tag.
+     */
+    public static void resetLevel(@NonNull final String tag) {
+        LEVELS.remove(tag);
+        final OPFLogger logger = LOGGERS.get(tag);
+        if (logger != null) {
+            logger.setMinLevel(resolveMinLevel(tag));
+        }
+    }
+
+    /**
+     * Resolves the levels of all loggers again.
+     * <p/>
+     * The {@code log.tag.<tag>} system properties are read only when a level is resolved,
+     * so call this method after the properties are changed.
+     */
+    public static void refreshLevels() {
+        for (OPFLogger logger : LOGGERS.values()) {
+            logger.setMinLevel(resolveMinLevel(logger.getTag()));
+        }
+    }
+
+    /**
+     * Sets if the repeated throwables should be deduplicated. Enabled by default.
+     * <p/>
+     * When enabled, the full stack trace is logged only for the first occurrence of a throwable stack shape,
+     * the following occurrences are logged as a short reference with a repeat count.
+     *
+     * @param deduplicateThrowables {@code true} if the repeated throwables should be deduplicated.
+     */
+    public static void setThrowableDeduplicationEnabled(final boolean deduplicateThrowables) {
+        OPFLog.deduplicateThrowables = deduplicateThrowables;
+        if (!deduplicateThrowables) {
+            THROWABLES.clear();
+        }
+    }
+
+    /**
+     * Enables the batched logcat emission. The records written during the window are grouped
+     * into fewer, larger logcat entries, split to respect the logcat entry size limit.
+     * The records with the {@link Log#ERROR} level and higher are written immediately
+     * together with the pending ones.
+     *
+     * @param windowMillis The batch window in milliseconds, {@code 0} to disable the batching.
+     */
+    public static synchronized void setBatchWindow(final long windowMillis) {
+        final LogBatcher oldBatcher = batcher;
+        batcher = windowMillis > 0 ? new LogBatcher(windowMillis) : null;
+        if (oldBatcher != null) {
+            oldBatcher.shutdown();
+        }
+    }
+
+    /**
+     * Writes the pending batched records to logcat.
+     */
+    public static void flush() {
+        final LogBatcher currentBatcher = batcher;
+        if (currentBatcher != null) {
+            currentBatcher.flush();
+        }
+    }
+
+    /**
+     * Returns the statistics of the batched logcat emission.
+     *
+     * @return The statistics or {@code null} if the batching isn't enabled.
+     */
+    @Nullable
+    public static OPFLogBatchStats getBatchStats() {
+        final LogBatcher currentBatcher = batcher;
+        return currentBatcher == null ? null : currentBatcher.getStats();
+    }
+
+    /**
+     * Sets the sink which receives the binary records of all {@link OPFLogEvent}s
+     * regardless of the logcat settings.
+     *
+     * @param sink The sink or {@code null} to remove the current one.
+     */
+    public static void setSink(@Nullable final OPFLogSink sink) {
+        OPFLog.sink = sink;
+    }
+
+    /**
+     * Creates the structured log event. Call {@link OPFLogEvent#log()} after the fields are added.
+     * <p/>
+     * If there is no {@link OPFLogSink} and the level isn't loggable, returns the event which ignores all fields.
+     *
+     * @param level The level of the event, e.g. {@link Log#INFO}.
+     * @param name  The name of the event.
+     * @return The event.
+     */
+    @NonNull
+    public static OPFLogEvent event(final int level, @NonNull final String name) {
+        if (sink == null && !shouldLog(level)) {
+            return OPFLogEvent.DISABLED;
+        }
+        return new OPFLogEvent(level, name, System.currentTimeMillis());
     }
 
     public static void v(@Nullable final String message) {
@@ -203,7 +430,7 @@ public final class OPFLog {
      */
     public static void logMethod(@Nullable final Object... args) {
         if (shouldLog(DEBUG)) {
-            Log.println(DEBUG, TAG, getMethodLog(args));
+            println(DEBUG, TAG, getMethodLog(args));
         }
     }
 
@@ -214,7 +441,73 @@ public final class OPFLog {
      */
     public static void logStubCall(@Nullable final Object... args) {
         if (shouldLog(DEBUG)) {
-            Log.println(DEBUG, TAG, "Stub method " + getMethodLog(args));
+            println(DEBUG, TAG, "Stub method " + getMethodLog(args));
+        }
+    }
+
+    /**
+     * Begins the traced section. Emits {@link android.os.Trace} sections on Android 4.3 and higher
+     * while the app tracing is active and records the section duration if the trace histograms are enabled.
+     * Costs a single tracing state check otherwise.
+     * <p/>
+     * Usage:
+     * <pre>
+     * final OPFTraceSection section = OPFLog.trace("init");
+     * try {
+     *     ...
+     * } finally {
+     *     section.close();
+     * }
+     * </pre>
+     *
+     * @param name The section name, should be a constant, because the number of the section histograms
+     *             is limited.
+     * @return The section which must be closed exactly once, on the same thread.
+     */
+    @NonNull
+    public static OPFTraceSection trace(@NonNull final String name) {
+        return OPFTraceSection.begin(name);
+    }
+
+    /**
+     * The same as {@link #trace(String)} with the {@code SimpleClassName.methodName} name of the calling method.
+     * <p/>
+     * The calling method is resolved only if the app tracing is active or the trace histograms are enabled.
+     *
+     * @return The section which must be closed exactly once, on the same thread.
+     */
+    @NonNull
+    public static OPFTraceSection traceMethod() {
+        if (!OPFTraceSection.isActive()) {
+            return OPFTraceSection.NO_OP;
         }
+        final StackTraceElement traceElement = getTraceElement(Thread.currentThread().getStackTrace());
+        return OPFTraceSection.begin(getSimpleClassName(traceElement) + "." + traceElement.getMethodName());
+    }
+
+    /**
+     * Sets if the durations of the traced sections should be recorded to the in-process histograms.
+     *
+     * @param enabled {@code true} if the durations should be recorded.
+     */
+    public static void setTraceHistogramsEnabled(final boolean enabled) {
+        OPFTraceSection.setHistogramsEnabled(enabled);
+    }
+
+    /**
+     * Returns the histograms of the traced sections durations in nanoseconds by the section names.
+     *
+     * @return The unmodifiable map of the histograms.
+     */
+    @NonNull
+    public static Map<String, OPFHistogram> getTraceHistograms() {
+        return OPFTraceSection.getHistograms();
+    }
+
+    /**
+     * Removes all recorded trace histograms.
+     */
+    public static void clearTraceHistograms() {
+        OPFTraceSection.clearHistograms();
     }
 }
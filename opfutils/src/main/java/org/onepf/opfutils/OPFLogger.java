@@ -0,0 +1,172 @@
+/*
+ * Copyright 2012-2015 One Platform Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onepf.opfutils;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import static android.util.Log.ASSERT;
+import static android.util.Log.DEBUG;
+import static android.util.Log.ERROR;
+import static android.util.Log.INFO;
+import static android.util.Log.VERBOSE;
+import static android.util.Log.WARN;
+
+/**
+ * The named logger with its own log tag and level.
+ * <p/>
+ * Is obtained via {@link OPFLog#getLogger(String)}. The minimum loggable level is resolved once,
+ * when the logger is created or the configuration is changed via {@link OPFLog#setEnabled(boolean, boolean)},
+ * {@link OPFLog#setLevel(String, int)} or {@link OPFLog#refreshLevels()}, so each check is a single field read.
+ */
+@SuppressWarnings("PMD.ShortMethodName")
+public final class OPFLogger {
+
+    /**
+     * The level which suppresses all logs.
+     */
+    public static final int SILENT = ASSERT + 1;
+
+    /**
+     * The maximum length of a log tag supported by {@link Log#isLoggable(String, int)}.
+     */
+    private static final int MAX_TAG_LENGTH = 23;
+
+    @NonNull
+    private final String tag;
+
+    private volatile int minLevel = SILENT;
+
+    OPFLogger(@NonNull final String tag) {
+        if (tag.length() == 0 || tag.length() > MAX_TAG_LENGTH) {
+            throw new IllegalArgumentException("Tag must be from 1 to " + MAX_TAG_LENGTH + " characters long.");
+        }
+        this.tag = tag;
+    }
+
+    @NonNull
+    public String getTag() {
+        return tag;
+    }
+
+    /**
+     * Returns the minimum loggable level, {@link #SILENT} if the logger is silenced.
+     *
+     * @return The minimum loggable level.
+     */
+    public int getMinLevel() {
+        return minLevel;
+    }
+
+    public boolean isLoggable(final int level) {
+        return level >= minLevel;
+    }
+
+    void setMinLevel(final int minLevel) {
+        this.minLevel = minLevel;
+    }
+
+    private void log(final int level, @Nullable final String message) {
+        if (level >= minLevel) {
+            OPFLog.println(level, tag, String.valueOf(message));
+        }
+    }
+
+    private void log(final int level,
+                     @Nullable final String message,
+                     @NonNull final Throwable throwable) {
+        if (level >= minLevel) {
+            OPFLog.println(level, tag, message + "\n" + OPFLog.renderThrowable(throwable));
+        }
+    }
+
+    //Seems like PMD bug
+    @SuppressWarnings("PMD.UnusedPrivateMethod")
+    private void log(final int level,
+                     @NonNull final String messageFormat,
+                     @Nullable final Object... args) {
+        if (level >= minLevel) {
+            OPFLog.println(level, tag, String.format(messageFormat, args));
+        }
+    }
+
+    public void v(@Nullable final String message) {
+        log(VERBOSE, message);
+    }
+
+    public void v(@Nullable final String message, @NonNull final Throwable cause) {
+        log(VERBOSE, message, cause);
+    }
+
+    public void v(@NonNull final String messageFormat, @Nullable final Object... args) {
+        log(VERBOSE, messageFormat, args);
+    }
+
+    public void d(@Nullable final String message) {
+        log(DEBUG, message);
+    }
+
+    public void d(@Nullable final String message, @NonNull final Throwable cause) {
+        log(DEBUG, message, cause);
+    }
+
+    public void d(@NonNull final String messageFormat, @Nullable final Object... args) {
+        log(DEBUG, messageFormat, args);
+    }
+
+    public void i(@Nullable final String message) {
+        log(INFO, message);
+    }
+
+    public void i(@Nullable final String message, @NonNull final Throwable cause) {
+        log(INFO, message, cause);
+    }
+
+    public void i(@NonNull final String messageFormat, @Nullable final Object... args) {
+        log(INFO, messageFormat, args);
+    }
+
+    public void w(@Nullable final String message) {
+        log(WARN, message);
+    }
+
+    public void w(@Nullable final String message, @NonNull final Throwable cause) {
+        log(WARN, message, cause);
+    }
+
+    public void w(@NonNull final String message, @Nullable final Object... args) {
+        log(WARN, message, args);
+    }
+
+    public void e(@Nullable final String message) {
+        log(ERROR, message);
+    }
+
+    public void e(@Nullable final String message, @NonNull final Throwable cause) {
+        log(ERROR, message, cause);
+    }
+
+    public void e(@NonNull final String message, @Nullable final Object... args) {
+        log(ERROR, message, args);
+    }
+
+    @Override
+    public String toString() {
+        return "OPFLogger{tag=\"" + tag + "\", minLevel=" + minLevel + '}';
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2012-2015 One Platform Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onepf.opfutils;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The installed and system states of the set of packages.
+ * <p/>
+ * Is created by {@link OPFUtils#getPackageStates(Context, Collection)}. The states are taken from the cached list
+ * of the installed packages, which is requested from the {@link PackageManager} with one query and is invalidated
+ * when any package is added, removed, changed or replaced.
+ */
+public final class OPFPackageStates {
+
+    private static final PackageChangeReceiver.Listener INVALIDATOR = new PackageChangeReceiver.Listener() {
+        @Override
+        public void onPackageChanged(@Nullable final String packageName) {
+            invalidate();
+        }
+    };
+
+    private static final AtomicInteger GENERATION = new AtomicInteger();
+
+    /**
+     * The flags of the installed applications by their package names.
+     */
+    @Nullable
+    private static volatile Map<String, Integer> installedPackages;
+
+    /**
+     * The flags of the requested packages, {@code null} for the packages which are not installed.
+     */
+    @NonNull
+    private final Map<String, Integer> states;
+
+    private OPFPackageStates(@NonNull final Map<String, Integer> states) {
+        this.states = states;
+    }
+
+    @NonNull
+    static OPFPackageStates get(@NonNull final Context context, @NonNull final Collection<String> packages) {
+        final Map<String, Integer> installed = getInstalledPackages(context);
+        final Map<String, Integer> states = new HashMap<String, Integer>(packages.size() * 2);
+        if (installed == null) {
+            // The list of the installed packages can't be received, so the packages are requested one by one.
+            final PackageManager packageManager = context.getPackageManager();
+            for (String packageName : packages) {
+                states.put(packageName, queryFlags(packageManager, packageName));
+            }
+        } else {
+            for (String packageName : packages) {
+                states.put(packageName, installed.get(packageName));
+            }
+        }
+        return new OPFPackageStates(Collections.unmodifiableMap(states));
+    }
+
+    static void invalidate() {
+        GENERATION.incrementAndGet();
+        installedPackages = null;
+    }
+
+    @Nullable
+    private static Map<String, Integer> getInstalledPackages(@NonNull final Context context) {
+        Map<String, Integer> installed = installedPackages;
+        if (installed == null) {
+            PackageChangeReceiver.addListener(INVALIDATOR);
+            PackageChangeReceiver.register(context);
+            final int generation = GENERATION.get();
+            installed = loadInstalledPackages(context);
+            if (installed != null) {
+                installedPackages = installed;
+                // Don't keep the list loaded before a concurrent invalidate()
+                if (generation != GENERATION.get()) {
+                    installedPackages = null;
+                }
+            }
+        }
+        return installed;
+    }
+
+    @Nullable
+    @SuppressWarnings("PMD.AvoidCatchingGenericException")
+    private static Map<String, Integer> loadInstalledPackages(@NonNull final Context context) {
+        final List<PackageInfo> packageInfos;
+        ComponentMetrics.onPackageManagerCall();
+        try {
+            packageInfos = context.getPackageManager().getInstalledPackages(0);
+        } catch (RuntimeException e) {
+            // The binder transaction fails if the list is too large
+            OPFLog.w("Can't get installed packages.", e);
+            return null;
+        }
+        if (packageInfos == null) {
+            return null;
+        }
+
+        final Map<String, Integer> installed = new HashMap<String, Integer>(packageInfos.size() * 2);
+        for (PackageInfo packageInfo : packageInfos) {
+            final ApplicationInfo applicationInfo = packageInfo.applicationInfo;
+            installed.put(packageInfo.packageName, applicationInfo == null ? 0 : applicationInfo.flags);
+        }
+        return installed;
+    }
+
+    @Nullable
+    private static Integer queryFlags(@NonNull final PackageManager packageManager,
+                                      @NonNull final String packageName) {
+        ComponentMetrics.onPackageManagerCall();
+        try {
+            return packageManager.getApplicationInfo(packageName, 0).flags;
+        } catch (PackageManager.NameNotFoundException ignore) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns {@code true} if the package is installed.
+     *
+     * @param packageName The checked package, must be one of the requested packages.
+     * @return {@code true} if the package is installed, {@code false} otherwise.
+     */
+    public boolean isInstalled(@NonNull final String packageName) {
+        return getFlags(packageName) != null;
+    }
+
+    /**
+     * Returns {@code true} if the package is installed and is system.
+     *
+     * @param packageName The checked package, must be one of the requested packages.
+     * @return {@code true} if the package is system, {@code false} otherwise.
+     */
+    public boolean isSystemApp(@NonNull final String packageName) {
+        final Integer flags = getFlags(packageName);
+        return flags != null
+                && ((flags & ApplicationInfo.FLAG_SYSTEM) != 0
+                || (flags & ApplicationInfo.FLAG_UPDATED_SYSTEM_APP) != 0);
+    }
+
+    /**
+     * Returns the installed packages from the requested ones.
+     *
+     * @return The installed packages.
+     */
+    @NonNull
+    public Set<String> getInstalledPackages() {
+        final Set<String> installed = new HashSet<String>();
+        for (Map.Entry<String, Integer> entry : states.entrySet()) {
+            if (entry.getValue() != null) {
+                installed.add(entry.getKey());
+            }
+        }
+        return installed;
+    }
+
+    @Nullable
+    private Integer getFlags(@NonNull final String packageName) {
+        if (!states.containsKey(packageName)) {
+            throw new IllegalArgumentException("Package " + packageName + " wasn't requested.");
+        }
+        return states.get(packageName);
+    }
+
+    @Override
+    public String toString() {
+        return states.toString();
+    }
+}
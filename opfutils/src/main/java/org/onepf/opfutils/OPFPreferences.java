@@ -33,7 +33,9 @@ public class OPFPreferences {
     private static void put(@NonNull final SharedPreferences preferences,
                             @NonNull final String key,
                             @NonNull final Set<String> value) {
+        final long startTime = ComponentMetrics.startPreferencesApply();
         preferences.edit().putStringSet(key, value).apply();
+        ComponentMetrics.onPreferencesApply(startTime);
     }
 
     @NonNull
@@ -46,7 +48,9 @@ public class OPFPreferences {
     private static void put(@NonNull final SharedPreferences preferences,
                             @NonNull final String key,
                             @NonNull final String value) {
+        final long startTime = ComponentMetrics.startPreferencesApply();
         preferences.edit().putString(key, value).apply();
+        ComponentMetrics.onPreferencesApply(startTime);
     }
 
     @NonNull
@@ -59,7 +63,9 @@ public class OPFPreferences {
     private static void put(@NonNull final SharedPreferences preferences,
                             @NonNull final String key,
                             final boolean value) {
+        final long startTime = ComponentMetrics.startPreferencesApply();
         preferences.edit().putBoolean(key, value).apply();
+        ComponentMetrics.onPreferencesApply(startTime);
     }
 
     private static Boolean getBoolean(@NonNull final SharedPreferences preferences,
@@ -74,7 +80,9 @@ public class OPFPreferences {
     private static void put(@NonNull final SharedPreferences preferences,
                             @NonNull final String key,
                             final int value) {
+        final long startTime = ComponentMetrics.startPreferencesApply();
         preferences.edit().putInt(key, value).apply();
+        ComponentMetrics.onPreferencesApply(startTime);
     }
 
     private static Integer getInt(@NonNull final SharedPreferences preferences,
@@ -89,7 +97,9 @@ public class OPFPreferences {
     private static void put(@NonNull final SharedPreferences preferences,
                             @NonNull final String key,
                             final long value) {
+        final long startTime = ComponentMetrics.startPreferencesApply();
         preferences.edit().putLong(key, value).apply();
+        ComponentMetrics.onPreferencesApply(startTime);
     }
 
     private static Long getLong(@NonNull final SharedPreferences preferences,
@@ -104,7 +114,9 @@ public class OPFPreferences {
     private static void put(@NonNull final SharedPreferences preferences,
                             @NonNull final String key,
                             final float value) {
+        final long startTime = ComponentMetrics.startPreferencesApply();
         preferences.edit().putFloat(key, value).apply();
+        ComponentMetrics.onPreferencesApply(startTime);
     }
 
     private static Float getFloat(@NonNull final SharedPreferences preferences,
@@ -123,11 +135,15 @@ public class OPFPreferences {
 
     private static void remove(@NonNull final SharedPreferences preferences,
                                @NonNull final String key) {
+        final long startTime = ComponentMetrics.startPreferencesApply();
         preferences.edit().remove(key).apply();
+        ComponentMetrics.onPreferencesApply(startTime);
     }
 
     private static void clear(@NonNull final SharedPreferences sharedPreferences) {
+        final long startTime = ComponentMetrics.startPreferencesApply();
         sharedPreferences.edit().clear().apply();
+        ComponentMetrics.onPreferencesApply(startTime);
     }
 
 
@@ -135,13 +151,19 @@ public class OPFPreferences {
     private final Context context;
     @NonNull
     private final SharedPreferences preferences;
+    @NonNull
+    private final String name;
+    /**
+     * Is set after the first access, which waits for the preferences file to be loaded.
+     */
+    private volatile boolean isLoaded;
 
     public OPFPreferences(@NonNull final Context context, @Nullable String postfix,
                           final int mode) {
         this.context = context.getApplicationContext();
         postfix = TextUtils.isEmpty(postfix) ? "" : "." + postfix;
         final String packageName = context.getPackageName();
-        final String name = packageName + postfix;
+        name = packageName + postfix;
         preferences = context.getSharedPreferences(name, mode);
     }
 
@@ -164,12 +186,14 @@ public class OPFPreferences {
     }
 
     public void put(@NonNull final String key, @NonNull final Set<String> value) {
+        awaitLoaded();
         put(preferences, key, value);
     }
 
     @NonNull
     public Set<String> getStringSet(@NonNull final String key,
                                     @NonNull final Set<String> defValue) {
+        awaitLoaded();
         return getStringSet(preferences, key, defValue);
     }
 
@@ -180,11 +204,13 @@ public class OPFPreferences {
     }
 
     public void put(@NonNull final String key, @NonNull final String value) {
+        awaitLoaded();
         put(preferences, key, value);
     }
 
     @NonNull
     public String getString(@NonNull final String key, @NonNull final String defValue) {
+        awaitLoaded();
         return getString(preferences, key, defValue);
     }
 
@@ -195,11 +221,13 @@ public class OPFPreferences {
     }
 
     public void put(@NonNull final String key, final boolean value) {
+        awaitLoaded();
         put(preferences, key, value);
     }
 
     @NonNull
     public Boolean getBoolean(@NonNull final String key, @NonNull final Boolean defValue) {
+        awaitLoaded();
         return getBoolean(preferences, key, defValue);
     }
 
@@ -211,12 +239,14 @@ public class OPFPreferences {
 
     public void put(@NonNull final String key,
                     final int value) {
+        awaitLoaded();
         put(preferences, key, value);
     }
 
     @NonNull
     public Integer getInt(@NonNull final String key,
                           @NonNull final Integer defValue) {
+        awaitLoaded();
         return getInt(preferences, key, defValue);
     }
 
@@ -228,12 +258,14 @@ public class OPFPreferences {
 
     public void put(@NonNull final String key,
                     final long value) {
+        awaitLoaded();
         put(preferences, key, value);
     }
 
     @NonNull
     public Long getLong(@NonNull final String key,
                         @NonNull final Long defValue) {
+        awaitLoaded();
         return getLong(preferences, key, defValue);
     }
 
@@ -245,12 +277,14 @@ public class OPFPreferences {
 
     public void put(@NonNull final String key,
                     final float value) {
+        awaitLoaded();
         put(preferences, key, value);
     }
 
     @NonNull
     public Float getFloat(@NonNull final String key,
                           @NonNull final Float defValue) {
+        awaitLoaded();
         return getFloat(preferences, key, defValue);
     }
 
@@ -261,14 +295,33 @@ public class OPFPreferences {
     }
 
     public boolean contains(@NonNull final String key) {
+        awaitLoaded();
         return contains(preferences, key);
     }
 
     public void remove(@NonNull final String key) {
+        awaitLoaded();
         remove(preferences, key);
     }
 
     public void clear() {
+        awaitLoaded();
         clear(preferences);
     }
+
+    /**
+     * Waits for the preferences file on the first access, so the wait is recorded by {@link OPFStartupProfiler}.
+     */
+    private void awaitLoaded() {
+        if (isLoaded) {
+            return;
+        }
+        if (OPFStartupProfiler.isEnabled()) {
+            final long startTime = OPFStartupProfiler.begin();
+            // Any read blocks until the file is loaded
+            preferences.contains(name);
+            OPFStartupProfiler.end(OPFStartupProfiler.PREFERENCES_LOAD, name, startTime);
+        }
+        isLoaded = true;
+    }
 }
@@ -0,0 +1,265 @@
+/*
+ * Copyright 2012-2015 One Platform Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onepf.opfutils;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Limits the rate of the action runs caused by the bursts of events, e.g. broadcasts or preference changes.
+ * <p/>
+ * Each event is reported via {@link #trigger()}, which is lock-free and doesn't allocate. The action is run
+ * by the given executor, usually {@link OPFExecutors#mainThread()} or {@link OPFExecutors#background()}:
+ * <ul>
+ * <li>{@link #coalesce(Executor, Runnable)} - the events triggered before the action is started are
+ * handled by a single run.</li>
+ * <li>{@link #debounce(Executor, Runnable, long)} - the action is run when there are no events
+ * for the given delay.</li>
+ * <li>{@link #throttle(Executor, Runnable, long)} - the action is run immediately, but not more often than
+ * once per the given interval. The events of the interval are handled by a single run at its end.</li>
+ * </ul>
+ * In all modes an action run is started after each {@link #trigger()} call, so the last event is never lost.
+ * The runs never overlap, the events triggered during a run are handled by a single next run.
+ * <p/>
+ * Usage:
+ * <pre>
+ * private final OPFRateLimiter reload = OPFRateLimiter.debounce(OPFExecutors.background(), new Runnable() {
+ *     public void run() {
+ *         reloadConfiguration();
+ *     }
+ * }, 500);
+ *
+ * public void onSharedPreferenceChanged(SharedPreferences preferences, String key) {
+ *     reload.trigger();
+ * }
+ * </pre>
+ */
+public final class OPFRateLimiter {
+
+    private static final int MODE_COALESCE = 0;
+    private static final int MODE_DEBOUNCE = 1;
+    private static final int MODE_THROTTLE = 2;
+
+    private static final int STATE_IDLE = 0;
+    private static final int STATE_SCHEDULED = 1;
+    private static final int STATE_RUNNING = 2;
+    private static final int STATE_RUNNING_PENDING = 3;
+
+    private final int mode;
+    @NonNull
+    private final Executor executor;
+    @NonNull
+    private final Runnable action;
+    private final long delayMillis;
+    @NonNull
+    private final AtomicInteger state = new AtomicInteger(STATE_IDLE);
+    private final Runnable timer = new Runnable() {
+        @Override
+        public void run() {
+            onTimer();
+        }
+    };
+    private final Runnable runner = new Runnable() {
+        @Override
+        public void run() {
+            runAction();
+        }
+    };
+
+    private volatile long lastTriggerTime;
+    private volatile long lastRunTime = Long.MIN_VALUE / 2;
+
+    private OPFRateLimiter(final int mode, @NonNull final Executor executor, @NonNull final Runnable action,
+                           final long delayMillis) {
+        if (delayMillis < 0) {
+            throw new IllegalArgumentException("Delay can't be negative.");
+        }
+        this.mode = mode;
+        this.executor = executor;
+        this.action = action;
+        this.delayMillis = delayMillis;
+    }
+
+    /**
+     * Creates the rate limiter which merges the events triggered before the action is started.
+     *
+     * @param executor The executor of the action.
+     * @param action   The action.
+     * @return The rate limiter.
+     */
+    @NonNull
+    public static OPFRateLimiter coalesce(@NonNull final Executor executor, @NonNull final Runnable action) {
+        return new OPFRateLimiter(MODE_COALESCE, executor, action, 0);
+    }
+
+    /**
+     * Creates the rate limiter which runs the action when there are no events for the given delay.
+     *
+     * @param executor    The executor of the action.
+     * @param action      The action.
+     * @param delayMillis The delay in milliseconds after the last event.
+     * @return The rate limiter.
+     */
+    @NonNull
+    public static OPFRateLimiter debounce(@NonNull final Executor executor, @NonNull final Runnable action,
+                                          final long delayMillis) {
+        return new OPFRateLimiter(MODE_DEBOUNCE, executor, action, delayMillis);
+    }
+
+    /**
+     * Creates the rate limiter which runs the action not more often than once per the given interval.
+     *
+     * @param executor       The executor of the action.
+     * @param action         The action.
+     * @param intervalMillis The minimum interval in milliseconds between the starts of the action.
+     * @return The rate limiter.
+     */
+    @NonNull
+    public static OPFRateLimiter throttle(@NonNull final Executor executor, @NonNull final Runnable action,
+                                          final long intervalMillis) {
+        return new OPFRateLimiter(MODE_THROTTLE, executor, action, intervalMillis);
+    }
+
+    /**
+     * Reports the event. Can be called from any thread.
+     */
+    public void trigger() {
+        if (mode == MODE_DEBOUNCE) {
+            lastTriggerTime = SystemClock.uptimeMillis();
+        }
+        while (true) {
+            switch (state.get()) {
+                case STATE_IDLE:
+                    if (state.compareAndSet(STATE_IDLE, STATE_SCHEDULED)) {
+                        schedule();
+                        return;
+                    }
+                    break;
+                case STATE_RUNNING:
+                    if (state.compareAndSet(STATE_RUNNING, STATE_RUNNING_PENDING)) {
+                        return;
+                    }
+                    break;
+                default:
+                    // The scheduled run isn't started yet or the next run is already pending
+                    return;
+            }
+        }
+    }
+
+    /**
+     * Cancels the action run which isn't started yet.
+     */
+    public void cancel() {
+        if (mode != MODE_COALESCE) {
+            getTimerHandler().removeCallbacks(timer);
+        }
+        if (!state.compareAndSet(STATE_SCHEDULED, STATE_IDLE)) {
+            state.compareAndSet(STATE_RUNNING_PENDING, STATE_RUNNING);
+        }
+    }
+
+    private void schedule() {
+        switch (mode) {
+            case MODE_DEBOUNCE:
+                getTimerHandler().postDelayed(timer, delayMillis);
+                break;
+            case MODE_THROTTLE:
+                final long delay = lastRunTime + delayMillis - SystemClock.uptimeMillis();
+                if (delay > 0) {
+                    getTimerHandler().postDelayed(timer, delay);
+                } else {
+                    executor.execute(runner);
+                }
+                break;
+            default:
+                executor.execute(runner);
+                break;
+        }
+    }
+
+    private void onTimer() {
+        if (state.get() != STATE_SCHEDULED) {
+            // Is cancelled
+            return;
+        }
+        if (mode == MODE_DEBOUNCE) {
+            final long quietTime = SystemClock.uptimeMillis() - lastTriggerTime;
+            if (quietTime < delayMillis) {
+                getTimerHandler().postDelayed(timer, delayMillis - quietTime);
+                return;
+            }
+        }
+        executor.execute(runner);
+    }
+
+    private void runAction() {
+        // The events triggered from now on are handled by the next run
+        if (!state.compareAndSet(STATE_SCHEDULED, STATE_RUNNING)) {
+            // Is cancelled
+            return;
+        }
+        lastRunTime = SystemClock.uptimeMillis();
+        try {
+            action.run();
+        } finally {
+            if (!state.compareAndSet(STATE_RUNNING, STATE_IDLE)) {
+                state.set(STATE_SCHEDULED);
+                schedule();
+            }
+        }
+    }
+
+    @NonNull
+    private Handler getTimerHandler() {
+        return executor == OPFExecutors.mainThread() ? MainHandlerHolder.HANDLER : TimerHandlerHolder.HANDLER;
+    }
+
+    private static final class MainHandlerHolder {
+
+        static final Handler HANDLER = new Handler(Looper.getMainLooper());
+
+        private MainHandlerHolder() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * The delays of the actions which aren't run on the main thread don't depend on the main thread load.
+     */
+    private static final class TimerHandlerHolder {
+
+        static final Handler HANDLER;
+
+        static {
+            final HandlerThread thread = new HandlerThread("OPFUtils timer");
+            thread.setDaemon(true);
+            thread.start();
+            HANDLER = new Handler(thread.getLooper());
+        }
+
+        private TimerHandlerHolder() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright 2012-2015 One Platform Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onepf.opfutils;
+
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The opt-in profiler of the library initialization.
+ * <p/>
+ * Records the start time and the duration of the operations which are usually done at the app start:
+ * <ul>
+ * <li>{@link #PREFERENCES_LOAD} - the first access to an {@link OPFPreferences} instance. The file is read
+ * on a background thread after the {@code SharedPreferences} are opened, and the first access waits for it.</li>
+ * <li>{@link #MANIFEST_INDEX} - the manifest queries of {@link OPFChecks}.</li>
+ * <li>{@link #PROCESS_NAME} - the resolution of the current process name, which is cached afterwards,
+ * e.g. by {@link OPFUtils#isMainProcess(android.content.Context)}.</li>
+ * </ul>
+ * The time is counted from the process start if it can be read from {@code /proc/self/stat},
+ * otherwise from the {@link #enable()} call. The main thread time and the background time are
+ * summed separately.
+ * <p/>
+ * Usage:
+ * <pre>
+ * public void attachBaseContext(Context base) {
+ *     super.attachBaseContext(base);
+ *     if (BuildConfig.DEBUG) {
+ *         OPFStartupProfiler.enable();
+ *     }
+ * }
+ * ...
+ * OPFLog.i(OPFStartupProfiler.dump());
+ * OPFStartupProfiler.disable();
+ * </pre>
+ */
+public final class OPFStartupProfiler {
+
+    public static final String PREFERENCES_LOAD = "preferences.load";
+    public static final String MANIFEST_INDEX = "checks.manifest_index";
+    public static final String PROCESS_NAME = "utils.process_name";
+
+    /**
+     * Only the first records are kept, the startup doesn't need more.
+     */
+    static final int MAX_RECORDS = 256;
+
+    private static final String PROC_SELF_STAT = "/proc/self/stat";
+    private static final int STAT_MAX_BYTES = 1024;
+    /**
+     * The index of the {@code starttime} field in {@code /proc/self/stat} counted after the process name.
+     */
+    private static final int STAT_START_TIME_INDEX = 19;
+    /**
+     * The clock ticks per second of the {@code /proc} times, it's the same on all Android devices.
+     */
+    private static final long CLOCK_TICKS_PER_SECOND = 100;
+    private static final double NANOS_PER_MILLI = 1000000.0;
+    private static final Comparator<Record> START_ORDER = new Comparator<Record>() {
+        @Override
+        public int compare(final Record lhs, final Record rhs) {
+            return lhs.startNanos < rhs.startNanos ? -1 : (lhs.startNanos == rhs.startNanos ? 0 : 1);
+        }
+    };
+
+    private static final AtomicReferenceArray<Record> RECORDS = new AtomicReferenceArray<Record>(MAX_RECORDS);
+    private static final AtomicInteger RECORD_COUNT = new AtomicInteger();
+
+    private static volatile boolean enabled;
+    private static volatile long originNanos;
+    private static volatile boolean isProcessStartOrigin;
+
+    private OPFStartupProfiler() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Enables the profiler and clears the previous records. Should be called as early as possible,
+     * e.g. in {@code Application.attachBaseContext()}.
+     */
+    public static void enable() {
+        clear();
+        final long nowNanos = System.nanoTime();
+        final long processStartMillis = readProcessStartMillis();
+        final long sinceProcessStartMillis = SystemClock.elapsedRealtime() - processStartMillis;
+        isProcessStartOrigin = processStartMillis > 0 && sinceProcessStartMillis >= 0;
+        originNanos = isProcessStartOrigin
+                ? nowNanos - TimeUnit.MILLISECONDS.toNanos(sinceProcessStartMillis)
+                : nowNanos;
+        enabled = true;
+    }
+
+    /**
+     * Disables the profiler. The records are kept until the next {@link #enable()} call.
+     */
+    public static void disable() {
+        enabled = false;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns the total duration of the recorded operations on the main thread.
+     *
+     * @return The duration in nanoseconds.
+     */
+    public static long getMainThreadNanos() {
+        return sumDurations(true);
+    }
+
+    /**
+     * Returns the total duration of the recorded operations on the background threads.
+     *
+     * @return The duration in nanoseconds.
+     */
+    public static long getBackgroundNanos() {
+        return sumDurations(false);
+    }
+
+    /**
+     * Returns the recorded operations ordered by the start time, one per line:
+     * <pre>
+     * startup ms since process_start: main=12.31 background=3.02 records=3
+     * +104.52 2.10 main preferences.load org.onepf.sample
+     * +110.03 10.21 main checks.manifest_index org.onepf.sample
+     * +121.40 3.02 bg utils.process_name
+     * </pre>
+     * The start time and the duration are in milliseconds. The format is stable, so the dumps of
+     * different builds can be compared.
+     *
+     * @return The timeline.
+     */
+    @NonNull
+    public static String dump() {
+        final Record[] records = getRecords();
+        Arrays.sort(records, START_ORDER);
+        final StringBuilder stringBuilder = new StringBuilder(String.format(Locale.US,
+                "startup ms since %s: main=%.2f background=%.2f records=%d",
+                isProcessStartOrigin ? "process_start" : "profiler_start",
+                getMainThreadNanos() / NANOS_PER_MILLI, getBackgroundNanos() / NANOS_PER_MILLI, records.length));
+        for (Record record : records) {
+            stringBuilder.append('\n').append(String.format(Locale.US, "+%.2f %.2f %s %s",
+                    (record.startNanos - originNanos) / NANOS_PER_MILLI, record.durationNanos / NANOS_PER_MILLI,
+                    record.isMainThread ? "main" : "bg", record.operation));
+            if (record.detail != null) {
+                stringBuilder.append(' ').append(record.detail);
+            }
+        }
+        return stringBuilder.toString();
+    }
+
+    /**
+     * Returns the start time for {@link #end(String, String, long)}, {@code 0} if the profiler is disabled.
+     */
+    static long begin() {
+        return enabled ? System.nanoTime() : 0L;
+    }
+
+    static void end(@NonNull final String operation, @Nullable final String detail, final long startNanos) {
+        if (startNanos == 0L) {
+            return;
+        }
+        final long durationNanos = System.nanoTime() - startNanos;
+        final int index = RECORD_COUNT.getAndIncrement();
+        if (index < MAX_RECORDS) {
+            RECORDS.set(index, new Record(operation, detail, startNanos, durationNanos, OPFUtils.isMainThread()));
+        }
+    }
+
+    static void clear() {
+        enabled = false;
+        RECORD_COUNT.set(0);
+        for (int i = 0; i < MAX_RECORDS; i++) {
+            RECORDS.set(i, null);
+        }
+    }
+
+    @NonNull
+    private static Record[] getRecords() {
+        final int count = Math.min(RECORD_COUNT.get(), MAX_RECORDS);
+        Record[] records = new Record[count];
+        int size = 0;
+        for (int i = 0; i < count; i++) {
+            // The record may be not set yet by a concurrent end()
+            final Record record = RECORDS.get(i);
+            if (record != null) {
+                records[size++] = record;
+            }
+        }
+        if (size < count) {
+            records = Arrays.copyOf(records, size);
+        }
+        return records;
+    }
+
+    private static long sumDurations(final boolean isMainThread) {
+        long sum = 0;
+        for (Record record : getRecords()) {
+            if (record.isMainThread == isMainThread) {
+                sum += record.durationNanos;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the process start time in the {@link SystemClock#elapsedRealtime()} time base,
+     * or {@code 0} if it can't be read.
+     */
+    private static long readProcessStartMillis() {
+        try {
+            final byte[] buffer = new byte[STAT_MAX_BYTES];
+            final int length = OPFUtils.readProcFile(PROC_SELF_STAT, buffer);
+            final String stat = new String(buffer, 0, length, "US-ASCII");
+            // The process name may contain spaces and is enclosed in the parentheses
+            final String[] fields = stat.substring(stat.lastIndexOf(')') + 2).split(" ");
+            return Long.parseLong(fields[STAT_START_TIME_INDEX]) * TimeUnit.SECONDS.toMillis(1)
+                    / CLOCK_TICKS_PER_SECOND;
+        } catch (IOException ignore) {
+            return 0;
+        } catch (RuntimeException ignore) {
+            // The unexpected format
+            return 0;
+        }
+    }
+
+    private static final class Record {
+
+        @NonNull
+        private final String operation;
+        @Nullable
+        private final String detail;
+        private final long startNanos;
+        private final long durationNanos;
+        private final boolean isMainThread;
+
+        Record(@NonNull final String operation,
+               @Nullable final String detail,
+               final long startNanos,
+               final long durationNanos,
+               final boolean isMainThread) {
+            this.operation = operation;
+            this.detail = detail;
+            this.startNanos = startNanos;
+            this.durationNanos = durationNanos;
+            this.isMainThread = isMainThread;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2012-2015 One Platform Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onepf.opfutils;
+
+import android.support.annotation.NonNull;
+import android.text.TextUtils;
+
+import org.onepf.opfutils.exception.WrongThreadException;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The thread affinity assertion.
+ * <p/>
+ * Can be bound to the main thread, to a thread with the given name, or to the first thread which calls
+ * {@link #check()}. The last is suitable for objects which are confined to a single thread executor.
+ * <p/>
+ * Each {@link #check()} is a single reference comparison for the main and the confined thread.
+ * The named thread is looked up by its name on each check, because a thread can be renamed.
+ * The consumer ProGuard rules of the library remove the {@link #check()} calls from the minified builds.
+ */
+public final class OPFThreadAffinity {
+
+    private static final int MODE_MAIN = 0;
+    private static final int MODE_NAMED = 1;
+    private static final int MODE_CONFINED = 2;
+
+    private static final OPFThreadAffinity MAIN_THREAD = new OPFThreadAffinity(MODE_MAIN, null);
+
+    private final int mode;
+    private final String threadName;
+    private final AtomicReference<Thread> owner;
+
+    private OPFThreadAffinity(final int mode, final String threadName) {
+        this.mode = mode;
+        this.threadName = threadName;
+        this.owner = new AtomicReference<Thread>(mode == MODE_MAIN ? OPFUtils.getMainThread() : null);
+    }
+
+    /**
+     * Returns the affinity to the main thread.
+     *
+     * @return The affinity to the main thread.
+     */
+    @NonNull
+    public static OPFThreadAffinity mainThread() {
+        return MAIN_THREAD;
+    }
+
+    /**
+     * Creates the affinity to the thread with the given name.
+     *
+     * @param threadName The name of the expected thread.
+     * @return The affinity to the named thread.
+     */
+    @NonNull
+    public static OPFThreadAffinity namedThread(@NonNull final String threadName) {
+        if (TextUtils.isEmpty(threadName)) {
+            throw new IllegalArgumentException("Thread name can't be null or empty.");
+        }
+        return new OPFThreadAffinity(MODE_NAMED, threadName);
+    }
+
+    /**
+     * Creates the affinity to the first thread which calls {@link #check()} or {@link #isCurrentThread()}.
+     *
+     * @return The affinity to the first calling thread.
+     */
+    @NonNull
+    public static OPFThreadAffinity confined() {
+        return new OPFThreadAffinity(MODE_CONFINED, null);
+    }
+
+    /**
+     * Returns {@code true} if the current thread matches the affinity.
+     *
+     * @return {@code true} if the current thread matches the affinity, {@code false} otherwise.
+     */
+    public boolean isCurrentThread() {
+        final Thread currentThread = Thread.currentThread();
+        if (mode == MODE_NAMED) {
+            // The thread isn't cached, it can be renamed
+            return threadName.equals(currentThread.getName());
+        }
+
+        final Thread ownerThread = owner.get();
+        if (ownerThread == currentThread) {
+            return true;
+        }
+
+        switch (mode) {
+            case MODE_CONFINED:
+                return ownerThread == null && owner.compareAndSet(null, currentThread);
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Throws {@link WrongThreadException} if the current thread doesn't match the affinity.
+     */
+    public void check() {
+        if (!isCurrentThread()) {
+            if (mode == MODE_MAIN) {
+                throw new WrongThreadException(true);
+            }
+            throw new WrongThreadException("Must be called from " + this
+                    + ", but was called from " + Thread.currentThread().getName() + ".");
+        }
+    }
+
+    @Override
+    public String toString() {
+        switch (mode) {
+            case MODE_MAIN:
+                return "main thread";
+            case MODE_NAMED:
+                return "thread " + threadName;
+            default:
+                final Thread ownerThread = owner.get();
+                return ownerThread == null ? "confined thread" : "thread " + ownerThread.getName();
+        }
+    }
+}
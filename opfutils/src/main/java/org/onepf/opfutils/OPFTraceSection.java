@@ -0,0 +1,187 @@
+/*
+ * Copyright 2012-2015 One Platform Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onepf.opfutils;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Trace;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import org.onepf.opfutils.core.OPFHistogram;
+
+import java.io.Closeable;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The traced section of code. Is obtained via {@link OPFLog#trace(String)} and must be closed exactly once,
+ * on the same thread, when the section ends.
+ * <p/>
+ * Emits {@link android.os.Trace} sections on Android 4.3 and higher while the app tracing is active, so
+ * the section is visible in systrace and Perfetto. If the trace histograms are enabled via
+ * {@link OPFLog#setTraceHistogramsEnabled(boolean)}, records the section duration in nanoseconds to
+ * the histogram of the section name. Only the first {@link #MAX_HISTOGRAMS} section names get histograms,
+ * so the names should be constants.
+ */
+public final class OPFTraceSection implements Closeable {
+
+    /**
+     * The maximum section name length supported by {@link android.os.Trace}.
+     */
+    private static final int MAX_NAME_LENGTH = 127;
+    private static final boolean TRACE_SUPPORTED
+            = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2;
+    private static final long TRACE_TAG_APP = 1L << 12;
+
+    /**
+     * The sections with the new names aren't recorded to the histograms after the limit is reached.
+     */
+    static final int MAX_HISTOGRAMS = 256;
+
+    static final OPFTraceSection NO_OP = new OPFTraceSection(null, false, 0L);
+    private static final OPFTraceSection TRACED = new OPFTraceSection(null, true, 0L);
+    private static final ConcurrentMap<String, OPFHistogram> HISTOGRAMS
+            = new ConcurrentHashMap<String, OPFHistogram>();
+
+    @Nullable
+    private static final Method IS_TAG_ENABLED = getIsTagEnabledMethod();
+    private static final Object[] IS_TAG_ENABLED_ARGS = {TRACE_TAG_APP};
+
+    private static volatile boolean histogramsEnabled;
+
+    @Nullable
+    private final String name;
+    private final boolean traced;
+    private final long startNanos;
+
+    private OPFTraceSection(@Nullable final String name, final boolean traced, final long startNanos) {
+        this.name = name;
+        this.traced = traced;
+        this.startNanos = startNanos;
+    }
+
+    @NonNull
+    static OPFTraceSection begin(@NonNull final String name) {
+        final boolean timed = histogramsEnabled;
+        final boolean traced = isTracing();
+        if (!traced && !timed) {
+            return NO_OP;
+        }
+
+        if (traced) {
+            beginSection(name);
+        }
+        // The traced only section is stateless, so the shared instance is used
+        return timed ? new OPFTraceSection(name, traced, System.nanoTime()) : TRACED;
+    }
+
+    /**
+     * Returns {@code true} if the section is worth creating, i.e. the app tracing is active
+     * or the trace histograms are enabled.
+     */
+    static boolean isActive() {
+        return histogramsEnabled || isTracing();
+    }
+
+    static void setHistogramsEnabled(final boolean enabled) {
+        histogramsEnabled = enabled;
+    }
+
+    @NonNull
+    static Map<String, OPFHistogram> getHistograms() {
+        return Collections.unmodifiableMap(new HashMap<String, OPFHistogram>(HISTOGRAMS));
+    }
+
+    static void clearHistograms() {
+        HISTOGRAMS.clear();
+    }
+
+    @Override
+    public void close() {
+        if (traced) {
+            endSection();
+        }
+        if (name != null) {
+            final OPFHistogram histogram = getHistogram(name);
+            if (histogram != null) {
+                histogram.record(System.nanoTime() - startNanos);
+            }
+        }
+    }
+
+    /**
+     * Returns the histogram of the section name, {@code null} if the name is new and the limit is reached.
+     */
+    @Nullable
+    private static OPFHistogram getHistogram(@NonNull final String name) {
+        OPFHistogram histogram = HISTOGRAMS.get(name);
+        if (histogram == null) {
+            // The concurrent first sections may exceed the limit slightly
+            if (HISTOGRAMS.size() >= MAX_HISTOGRAMS) {
+                return null;
+            }
+            final OPFHistogram newHistogram = new OPFHistogram();
+            histogram = HISTOGRAMS.putIfAbsent(name, newHistogram);
+            if (histogram == null) {
+                histogram = newHistogram;
+            }
+        }
+        return histogram;
+    }
+
+    private static boolean isTracing() {
+        if (!TRACE_SUPPORTED) {
+            return false;
+        }
+        if (IS_TAG_ENABLED == null) {
+            return true;
+        }
+        try {
+            return (Boolean) IS_TAG_ENABLED.invoke(null, IS_TAG_ENABLED_ARGS);
+        } catch (Exception ignore) {
+            return true;
+        }
+    }
+
+    @Nullable
+    private static Method getIsTagEnabledMethod() {
+        if (!TRACE_SUPPORTED) {
+            return null;
+        }
+        try {
+            // Public only since Android 10 as Trace.isEnabled()
+            return Trace.class.getMethod("isTagEnabled", long.class);
+        } catch (Exception ignore) {
+            return null;
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    private static void beginSection(@NonNull final String name) {
+        Trace.beginSection(name.length() > MAX_NAME_LENGTH ? name.substring(0, MAX_NAME_LENGTH) : name);
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    private static void endSection() {
+        Trace.endSection();
+    }
+}
@@ -20,15 +20,17 @@ import android.app.ActivityManager;
 import android.content.Context;
 import android.content.Intent;
 import android.content.pm.ApplicationInfo;
-import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
-import android.net.ConnectivityManager;
-import android.net.NetworkInfo;
 import android.os.Bundle;
 import android.os.Looper;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
+import org.onepf.opfutils.core.OPFRenderLimits;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Collection;
 import java.util.List;
 
 import static android.app.ActivityManager.RunningAppProcessInfo;
@@ -41,47 +43,65 @@ public final class OPFUtils {
 
     private static final String ITEM_DIVIDER = ", ";
 
+    /**
+     * The main thread never changes during the process lifetime, so it's requested only once.
+     */
+    private static final Thread MAIN_THREAD = Looper.getMainLooper().getThread();
+
+    private static final String PROC_SELF_CMDLINE = "/proc/self/cmdline";
+    private static final int PROCESS_NAME_MAX_BYTES = 256;
+
+    /**
+     * The path of the file which contains the process command line, replaced in tests.
+     */
+    @NonNull
+    static volatile String cmdlinePath = PROC_SELF_CMDLINE;
+
+    @Nullable
+    private static volatile String currentProcessName;
+
     private OPFUtils() {
         throw new UnsupportedOperationException();
     }
 
     public static boolean isMainThread() {
-        return Looper.getMainLooper().getThread() == Thread.currentThread();
+        return MAIN_THREAD == Thread.currentThread();
+    }
+
+    @NonNull
+    static Thread getMainThread() {
+        return MAIN_THREAD;
     }
 
     /**
      * Returns {@code true} if there is an active connection.
+     * <p/>
+     * Returns the cached state if the {@link OPFConnectivityMonitor} is started.
      *
      * @param context The instance of {@link android.content.Context}.
      * @return {@code true} if there's an active connection, {@code false} otherwise.
      * @throws java.lang.SecurityException If a caller doesn't have the {@link android.Manifest.permission#ACCESS_NETWORK_STATE} permission.
      */
     public static boolean isConnected(@NonNull final Context context) {
-        final Object service = context.getSystemService(Context.CONNECTIVITY_SERVICE);
-        final ConnectivityManager cm = (ConnectivityManager) service;
-        final NetworkInfo netInfo = cm.getActiveNetworkInfo();
-        return netInfo != null && netInfo.isConnected();
+        return OPFConnectivityMonitor.isConnected(context);
     }
 
     /**
      * Returns the version code of the application.
+     * <p/>
+     * The version is requested only once and is served from memory after that.
      *
      * @return The version code of the application.
      */
     public static int getAppVersion(@NonNull final Context context) {
-        try {
-            final PackageInfo packageInfo = context.getPackageManager()
-                    .getPackageInfo(context.getPackageName(), 0);
-            return packageInfo.versionCode;
-        } catch (PackageManager.NameNotFoundException ignore) {
-            // ignore
-        }
-
-        return Integer.MIN_VALUE;
+        final AppInfo appInfo = AppInfo.get(context);
+        return appInfo == null ? Integer.MIN_VALUE : appInfo.getVersionCode();
     }
 
     /**
      * Returns {@code true} if the application is system.
+     * <p/>
+     * The state of the own application package is requested only once and is served from memory after that.
      *
      * @param context    The instance of {@link android.content.Context}.
      * @param appPackage The package of the checked application.
@@ -89,11 +109,17 @@ public final class OPFUtils {
      */
     public static boolean isSystemApp(@NonNull final Context context,
                                       @NonNull final String appPackage) {
+        if (appPackage.equals(context.getPackageName())) {
+            final AppInfo ownAppInfo = AppInfo.get(context);
+            if (ownAppInfo != null) {
+                return ownAppInfo.isSystemApp();
+            }
+        }
+        ComponentMetrics.onPackageManagerCall();
         try {
             final ApplicationInfo appInfo = context.getPackageManager().getApplicationInfo(
                     appPackage, 0);
-            return (appInfo.flags & ApplicationInfo.FLAG_SYSTEM) != 0
-                    || (appInfo.flags & ApplicationInfo.FLAG_UPDATED_SYSTEM_APP) != 0;
+            return AppInfo.isSystemApp(appInfo);
         } catch (PackageManager.NameNotFoundException ignore) {
             // ignore
         }
@@ -109,6 +135,7 @@ public final class OPFUtils {
      */
     public static boolean isInstalled(@NonNull final Context context,
                                       @NonNull final String appPackage) {
+        ComponentMetrics.onPackageManagerCall();
         try {
             return context.getPackageManager().getApplicationInfo(appPackage, 0) != null;
         } catch (PackageManager.NameNotFoundException ignore) {
@@ -117,14 +144,38 @@ public final class OPFUtils {
         return false;
     }
 
+    /**
+     * Returns the installed and system states of the packages.
+     * <p/>
+     * Unlike {@link #isInstalled(Context, String)} and {@link #isSystemApp(Context, String)} the states of all
+     * packages are taken from the one cached list of the installed packages. The list is invalidated when
+     * any package is added, removed, changed or replaced.
+     *
+     * @param context  The instance of {@link android.content.Context}.
+     * @param packages The checked packages.
+     * @return The states of the checked packages.
+     */
+    @NonNull
+    public static OPFPackageStates getPackageStates(@NonNull final Context context,
+                                                    @NonNull final Collection<String> packages) {
+        return OPFPackageStates.get(context, packages);
+    }
+
     /**
      * Returns the package name of the application installer.
+     * <p/>
+     * The installer is requested only once and is served from memory after that.
      *
      * @param context The instance of {@link android.content.Context}.
      * @return The package name of the application installer.
      */
     @Nullable
     public static String getPackageInstaller(@NonNull final Context context) {
+        final AppInfo appInfo = AppInfo.get(context);
+        if (appInfo != null) {
+            return appInfo.getInstaller();
+        }
+        ComponentMetrics.onPackageManagerCall();
         final PackageManager packageManager = context.getPackageManager();
         return packageManager.getInstallerPackageName(context.getPackageName());
     }
@@ -136,20 +187,102 @@ public final class OPFUtils {
      * @return {@code true} if the current process is main.
      */
     public static boolean isMainProcess(@NonNull final Context context) {
+        return context.getPackageName().equals(getCurrentProcessName(context));
+    }
+
+    /**
+     * Returns the name of the current process.
+     * <p/>
+     * The name is read from {@code /proc/self/cmdline}. It's trusted only if it's the package name or
+     * the {@code package:suffix} name of a private process, otherwise the running processes are requested from
+     * the {@link ActivityManager}. The name is cached for the process lifetime.
+     *
+     * @param context The instance of {@link android.content.Context}.
+     * @return The name of the current process, or {@code null} if it can't be resolved.
+     */
+    @Nullable
+    public static String getCurrentProcessName(@NonNull final Context context) {
+        String processName = currentProcessName;
+        if (processName == null) {
+            final long startTime = OPFStartupProfiler.begin();
+            processName = readProcessName();
+            if (!isAppProcessName(context.getPackageName(), processName)) {
+                processName = queryProcessName(context);
+            }
+            currentProcessName = processName;
+            OPFStartupProfiler.end(OPFStartupProfiler.PROCESS_NAME, null, startTime);
+        }
+        return processName;
+    }
+
+    static void clearCurrentProcessName() {
+        currentProcessName = null;
+    }
+
+    /**
+     * Reads the beginning of the {@code /proc} file, which is enough for the needed fields.
+     *
+     * @param path   The path of the file.
+     * @param buffer The buffer, its length limits the number of the read bytes.
+     * @return The number of the read bytes.
+     * @throws IOException If the file can't be read.
+     */
+    static int readProcFile(@NonNull final String path, @NonNull final byte[] buffer) throws IOException {
+        final FileInputStream inputStream = new FileInputStream(path);
+        try {
+            int length = 0;
+            int read;
+            while (length < buffer.length
+                    && (read = inputStream.read(buffer, length, buffer.length - length)) > 0) {
+                length += read;
+            }
+            return length;
+        } finally {
+            try {
+                inputStream.close();
+            } catch (IOException ignore) {
+                // ignore
+            }
+        }
+    }
+
+    private static boolean isAppProcessName(@NonNull final String packageName, @Nullable final String processName) {
+        return processName != null && processName.startsWith(packageName)
+                && (processName.length() == packageName.length() || processName.charAt(packageName.length()) == ':');
+    }
+
+    @Nullable
+    private static String readProcessName() {
+        try {
+            final byte[] buffer = new byte[PROCESS_NAME_MAX_BYTES];
+            final int length = readProcFile(cmdlinePath, buffer);
+            // The arguments are separated by the zero bytes
+            int end = 0;
+            while (end < length && buffer[end] != 0) {
+                end++;
+            }
+            return new String(buffer, 0, end, "UTF-8").trim();
+        } catch (IOException ignore) {
+            return null;
+        }
+    }
+
+    @Nullable
+    private static String queryProcessName(@NonNull final Context context) {
         final int currentPid = android.os.Process.myPid();
         final ActivityManager activityManager = (ActivityManager) context
                 .getSystemService(Context.ACTIVITY_SERVICE);
         final List<RunningAppProcessInfo> runningProcesses = activityManager.getRunningAppProcesses();
+        if (runningProcesses == null) {
+            return null;
+        }
 
-        String currentProcessName = null;
         for (RunningAppProcessInfo process : runningProcesses) {
             if (process.pid == currentPid) {
-                currentProcessName = process.processName;
-                break;
+                return process.processName;
             }
         }
-
-        return context.getPackageName().equals(currentProcessName);
+        return null;
     }
 
     /**
@@ -158,14 +291,203 @@ public final class OPFUtils {
      * @param intent The converted intent.
      * @return The string representation of the intent.
      */
-    @SuppressWarnings("PMD.ConsecutiveLiteralAppends")
     @NonNull
     public static String toString(@Nullable final Intent intent) {
         if (intent == null) {
             return "null";
         }
 
-        final StringBuilder stringBuilder = new StringBuilder("Intent{action=\"")
+        final StringBuilder stringBuilder = StringBuilderPool.obtain();
+        try {
+            appendIntent(stringBuilder, intent);
+            return stringBuilder.toString();
+        } finally {
+            StringBuilderPool.release(stringBuilder);
+        }
+    }
+
+    /**
+     * Converts a {@link android.os.Bundle} object to a {@code String}.
+     *
+     * @param bundle The converted bundle.
+     * @return The string representation of the bundle.
+     */
+    @NonNull
+    public static String toString(@Nullable final Bundle bundle) {
+        if (bundle == null) {
+            return "null";
+        }
+
+        if (bundle.isEmpty()) {
+            return "";
+        }
+
+        final StringBuilder stringBuilder = StringBuilderPool.obtain();
+        try {
+            appendBundle(stringBuilder, bundle);
+            return stringBuilder.toString();
+        } finally {
+            StringBuilderPool.release(stringBuilder);
+        }
+    }
+
+    /**
+     * Converts a {@link android.content.Intent} object to a {@code String} with the size limited by
+     * {@code limits}.
+     *
+     * @param intent The converted intent.
+     * @param limits The rendering limits.
+     * @return The string representation of the intent.
+     * @see #appendTo(Appendable, Intent, OPFRenderLimits)
+     */
+    @NonNull
+    public static String toString(@Nullable final Intent intent, @NonNull final OPFRenderLimits limits) {
+        final BoundedRenderer renderer = BoundedRenderer.obtain(limits);
+        try {
+            renderer.renderIntent(intent, 0);
+            return renderer.getText().toString();
+        } finally {
+            renderer.release();
+        }
+    }
+
+    /**
+     * Converts a {@link android.os.Bundle} object to a {@code String} with the size limited by {@code limits}.
+     *
+     * @param bundle The converted bundle.
+     * @param limits The rendering limits.
+     * @return The string representation of the bundle.
+     * @see #appendTo(Appendable, Bundle, OPFRenderLimits)
+     */
+    @NonNull
+    public static String toString(@Nullable final Bundle bundle, @NonNull final OPFRenderLimits limits) {
+        final BoundedRenderer renderer = BoundedRenderer.obtain(limits);
+        try {
+            renderer.renderBundle(bundle, 0);
+            return renderer.getText().toString();
+        } finally {
+            renderer.release();
+        }
+    }
+
+    /**
+     * Appends the string representation of a {@link android.content.Intent} object to {@code appendable}.
+     * <p/>
+     * Unlike {@link #toString(Intent)} the nested bundles, intents, arrays and collections of the extras are
+     * rendered recursively up to {@link OPFRenderLimits#getMaxDepth()} levels, only the first
+     * {@link OPFRenderLimits#getMaxElements()} elements of each are rendered, and the text is truncated to
+     * {@link OPFRenderLimits#getMaxLength()} characters. The values aren't read after the text is truncated,
+     * but a parcelled bundle is still unparcelled as a whole, so the cost of the first access isn't bounded.
+     * The text is rendered to the reused per-thread builder and is appended to {@code appendable} at once.
+     *
+     * @param appendable The appendable the text is appended to.
+     * @param intent     The rendered intent.
+     * @param limits     The rendering limits.
+     * @param <A>        The type of the appendable.
+     * @return The {@code appendable}.
+     * @throws IOException If {@code appendable} throws it.
+     */
+    @NonNull
+    public static <A extends Appendable> A appendTo(@NonNull final A appendable,
+                                                    @Nullable final Intent intent,
+                                                    @NonNull final OPFRenderLimits limits) throws IOException {
+        final BoundedRenderer renderer = BoundedRenderer.obtain(limits);
+        try {
+            renderer.renderIntent(intent, 0);
+            appendable.append(renderer.getText());
+        } finally {
+            renderer.release();
+        }
+        return appendable;
+    }
+
+    /**
+     * Appends the string representation of a {@link android.os.Bundle} object to {@code appendable}
+     * with the size limited by {@code limits}.
+     *
+     * @param appendable The appendable the text is appended to.
+     * @param bundle     The rendered bundle.
+     * @param limits     The rendering limits.
+     * @param <A>        The type of the appendable.
+     * @return The {@code appendable}.
+     * @throws IOException If {@code appendable} throws it.
+     * @see #appendTo(Appendable, Intent, OPFRenderLimits)
+     */
+    @NonNull
+    public static <A extends Appendable> A appendTo(@NonNull final A appendable,
+                                                    @Nullable final Bundle bundle,
+                                                    @NonNull final OPFRenderLimits limits) throws IOException {
+        final BoundedRenderer renderer = BoundedRenderer.obtain(limits);
+        try {
+            renderer.renderBundle(bundle, 0);
+            appendable.append(renderer.getText());
+        } finally {
+            renderer.release();
+        }
+        return appendable;
+    }
+
+    /**
+     * Returns the log argument which converts a {@link android.content.Intent} object to a {@code String} only
+     * when its {@code toString()} is called.
+     * <p/>
+     * Use it instead of {@link #toString(Intent)} in the {@link OPFLog} calls with a message format,
+     * so the intent isn't rendered if the log level is disabled:
+     * <pre>
+     * OPFLog.d("Received: %s", OPFUtils.lazyToString(intent));
+     * </pre>
+     *
+     * @param intent The converted intent.
+     * @return The object whose {@code toString()} returns {@link #toString(Intent)}.
+     */
+    @NonNull
+    public static Object lazyToString(@Nullable final Intent intent) {
+        return LazyRendering.of(intent, null);
+    }
+
+    /**
+     * The same as {@link #lazyToString(Intent)}, but the intent is rendered with
+     * {@link #toString(Intent, OPFRenderLimits)}.
+     *
+     * @param intent The converted intent.
+     * @param limits The rendering limits.
+     * @return The object whose {@code toString()} returns {@link #toString(Intent, OPFRenderLimits)}.
+     */
+    @NonNull
+    public static Object lazyToString(@Nullable final Intent intent, @NonNull final OPFRenderLimits limits) {
+        return LazyRendering.of(intent, limits);
+    }
+
+    /**
+     * Returns the log argument which converts a {@link android.os.Bundle} object to a {@code String} only
+     * when its {@code toString()} is called.
+     *
+     * @param bundle The converted bundle.
+     * @return The object whose {@code toString()} returns {@link #toString(Bundle)}.
+     * @see #lazyToString(Intent)
+     */
+    @NonNull
+    public static Object lazyToString(@Nullable final Bundle bundle) {
+        return LazyRendering.of(bundle, null);
+    }
+
+    /**
+     * The same as {@link #lazyToString(Bundle)}, but the bundle is rendered with
+     * {@link #toString(Bundle, OPFRenderLimits)}.
+     *
+     * @param bundle The converted bundle.
+     * @param limits The rendering limits.
+     * @return The object whose {@code toString()} returns {@link #toString(Bundle, OPFRenderLimits)}.
+     */
+    @NonNull
+    public static Object lazyToString(@Nullable final Bundle bundle, @NonNull final OPFRenderLimits limits) {
+        return LazyRendering.of(bundle, limits);
+    }
+
+    @SuppressWarnings("PMD.ConsecutiveLiteralAppends")
+    private static void appendIntent(@NonNull final StringBuilder stringBuilder, @NonNull final Intent intent) {
+        stringBuilder
+                .append("Intent{action=\"")
                 .append(intent.getAction())
                 .append('"')
                 .append(ITEM_DIVIDER)
@@ -176,33 +498,26 @@ public final class OPFUtils {
                 .append("component=\"")
                 .append(intent.getComponent())
                 .append('"')
-                .append(ITEM_DIVIDER);
+                .append(ITEM_DIVIDER)
+                .append("extras=");
 
         final Bundle extras = intent.getExtras();
-        stringBuilder
-                .append("extras=")
-                .append(extras == null ? null : toString(extras))
-                .append('}');
-        return stringBuilder.toString();
+        if (extras == null) {
+            stringBuilder.append((String) null);
+        } else {
+            appendBundle(stringBuilder, extras);
+        }
+        stringBuilder.append('}');
     }
 
     /**
-     * Converts a {@link android.os.Bundle} object to a {@code String}.
-     *
-     * @param bundle The converted bundle.
-     * @return The string representation of the bundle.
+     * Appends nothing for an empty bundle, the same as {@link #toString(Bundle)} returns an empty string.
      */
-    @NonNull
-    public static String toString(@Nullable final Bundle bundle) {
-        if (bundle == null) {
-            return "null";
-        }
-
+    private static void appendBundle(@NonNull final StringBuilder stringBuilder, @NonNull final Bundle bundle) {
         if (bundle.isEmpty()) {
-            return "";
+            return;
         }
 
-        final StringBuilder stringBuilder = new StringBuilder();
         stringBuilder.append('[');
         for (String key : bundle.keySet()) {
             stringBuilder
@@ -215,6 +530,5 @@ public final class OPFUtils {
         }
         stringBuilder.setLength(stringBuilder.length() - ITEM_DIVIDER.length());
         stringBuilder.append(']');
-        return stringBuilder.toString();
     }
 }
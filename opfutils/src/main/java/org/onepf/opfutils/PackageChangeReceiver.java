@@ -0,0 +1,93 @@
+/*
+ * Copyright 2012-2015 One Platform Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onepf.opfutils;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The process-wide receiver of the package added, removed, changed and replaced broadcasts.
+ * Is used to invalidate the caches of the package manager data.
+ */
+final class PackageChangeReceiver extends BroadcastReceiver {
+
+    private static final List<Listener> LISTENERS = new CopyOnWriteArrayList<Listener>();
+
+    private static boolean isRegistered;
+
+    private PackageChangeReceiver() {
+    }
+
+    /**
+     * Registers the receiver if it hasn't been registered yet.
+     *
+     * @param context The instance of {@link Context}.
+     */
+    static synchronized void register(@NonNull final Context context) {
+        if (isRegistered) {
+            return;
+        }
+
+        final IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        filter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        filter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        filter.addDataScheme("package");
+
+        final Context applicationContext = context.getApplicationContext();
+        (applicationContext == null ? context : applicationContext)
+                .registerReceiver(new PackageChangeReceiver(), filter);
+        isRegistered = true;
+    }
+
+    static void addListener(@NonNull final Listener listener) {
+        if (!LISTENERS.contains(listener)) {
+            LISTENERS.add(listener);
+        }
+    }
+
+    static void notifyPackageChanged(@Nullable final String packageName) {
+        for (Listener listener : LISTENERS) {
+            listener.onPackageChanged(packageName);
+        }
+    }
+
+    @Override
+    public void onReceive(final Context context, final Intent intent) {
+        final Uri data = intent.getData();
+        notifyPackageChanged(data == null ? null : data.getSchemeSpecificPart());
+    }
+
+    interface Listener {
+
+        /**
+         * Is called when a package is added, removed, changed or replaced.
+         *
+         * @param packageName The changed package or {@code null} if it's unknown.
+         */
+        void onPackageChanged(@Nullable String packageName);
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2012-2015 One Platform Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onepf.opfutils;
+
+import android.app.Activity;
+import android.app.Application;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.os.Bundle;
+import android.os.Process;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * The cache of the runtime permission states.
+ * <p/>
+ * A revoked permission kills the app process, so only the granted states are served from the cache.
+ * A denied permission can be granted at any moment, so its state is queried on every check. The denied states
+ * are also queried again when the app returns to the foreground, the {@link OPFChecks.PermissionListener}s are
+ * notified about the granted ones on the main thread.
+ */
+final class PermissionCache {
+
+    private static final ConcurrentMap<String, Boolean> STATES = new ConcurrentHashMap<String, Boolean>();
+    private static final List<OPFChecks.PermissionListener> LISTENERS
+            = new CopyOnWriteArrayList<OPFChecks.PermissionListener>();
+
+    private static Context appContext;
+    private static boolean isTrackingForeground;
+
+    private PermissionCache() {
+        throw new UnsupportedOperationException();
+    }
+
+    static boolean isGranted(@NonNull final Context context, @NonNull final String permission) {
+        if (Boolean.TRUE.equals(STATES.get(permission))) {
+            return true;
+        }
+
+        init(context);
+        final boolean isGranted = queryState(context, permission);
+        STATES.put(permission, isGranted);
+        return isGranted;
+    }
+
+    static void addListener(@NonNull final OPFChecks.PermissionListener listener) {
+        if (!LISTENERS.contains(listener)) {
+            LISTENERS.add(listener);
+        }
+    }
+
+    static void removeListener(@NonNull final OPFChecks.PermissionListener listener) {
+        LISTENERS.remove(listener);
+    }
+
+    /**
+     * Queries the states of all denied permissions again on a background thread and notifies the listeners
+     * about the granted ones on the main thread.
+     *
+     * @return The future of the query, {@code null} if no state has been cached yet.
+     */
+    @Nullable
+    static Future<?> refresh() {
+        final Context context;
+        synchronized (PermissionCache.class) {
+            context = appContext;
+        }
+        if (context == null) {
+            return null;
+        }
+
+        final FutureTask<Void> task = new FutureTask<Void>(new Runnable() {
+            @Override
+            public void run() {
+                refresh(context);
+            }
+        }, null);
+        OPFExecutors.background().execute(task);
+        return task;
+    }
+
+    private static void refresh(@NonNull final Context context) {
+        final Map<String, Boolean> changedStates = new LinkedHashMap<String, Boolean>();
+        for (Map.Entry<String, Boolean> entry : STATES.entrySet()) {
+            final String permission = entry.getKey();
+            if (entry.getValue() || !queryState(context, permission)) {
+                continue;
+            }
+            // A concurrent check or refresh may have already updated the state
+            if (STATES.replace(permission, false, true)) {
+                changedStates.put(permission, true);
+            }
+        }
+        if (changedStates.isEmpty() || LISTENERS.isEmpty()) {
+            return;
+        }
+
+        OPFExecutors.mainThread().execute(new Runnable() {
+            @Override
+            public void run() {
+                for (Map.Entry<String, Boolean> entry : changedStates.entrySet()) {
+                    for (OPFChecks.PermissionListener listener : LISTENERS) {
+                        listener.onPermissionChanged(entry.getKey(), entry.getValue());
+                    }
+                }
+            }
+        });
+    }
+
+    static void clear() {
+        STATES.clear();
+    }
+
+    private static boolean queryState(@NonNull final Context context, @NonNull final String permission) {
+        return context.checkPermission(permission, Process.myPid(), Process.myUid())
+                == PackageManager.PERMISSION_GRANTED;
+    }
+
+    private static synchronized void init(@NonNull final Context context) {
+        if (appContext == null) {
+            final Context applicationContext = context.getApplicationContext();
+            appContext = applicationContext == null ? context : applicationContext;
+        }
+        if (!isTrackingForeground && appContext instanceof Application) {
+            ((Application) appContext).registerActivityLifecycleCallbacks(new ForegroundTracker());
+            isTrackingForeground = true;
+        }
+    }
+
+    /**
+     * Refreshes the cache when the first activity of the app is started.
+     */
+    private static final class ForegroundTracker implements Application.ActivityLifecycleCallbacks {
+
+        private int startedActivities;
+
+        @Override
+        public void onActivityStarted(final Activity activity) {
+            if (startedActivities++ == 0) {
+                refresh();
+            }
+        }
+
+        @Override
+        public void onActivityStopped(final Activity activity) {
+            if (startedActivities > 0) {
+                startedActivities--;
+            }
+        }
+
+        @Override
+        public void onActivityCreated(final Activity activity, final Bundle savedInstanceState) {
+            // nothing
+        }
+
+        @Override
+        public void onActivityResumed(final Activity activity) {
+            // nothing
+        }
+
+        @Override
+        public void onActivityPaused(final Activity activity) {
+            // nothing
+        }
+
+        @Override
+        public void onActivitySaveInstanceState(final Activity activity, final Bundle outState) {
+            // nothing
+        }
+
+        @Override
+        public void onActivityDestroyed(final Activity activity) {
+            // nothing
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2012-2015 One Platform Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onepf.opfutils;
+
+import android.content.Context;
+import android.content.Intent;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.text.TextUtils;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The cache of the {@link OPFChecks#checkReceiver(Context, String, Intent, String)} results.
+ * <p/>
+ * Is keyed by the app package, the intent (in terms of {@link Intent#filterEquals(Intent)}),
+ * the receiver name and the permission.
+ * Is cleared when the app package is changed or replaced,
+ * see {@link OPFChecks#registerPackageChangeReceiver(Context)}.
+ */
+final class ReceiverCache {
+
+    /**
+     * The cached value of a passed check.
+     */
+    private static final String PASSED = "";
+
+    private static final ConcurrentMap<Key, String> CACHE = new ConcurrentHashMap<Key, String>();
+    private static final AtomicInteger GENERATION = new AtomicInteger();
+
+    private static final PackageChangeReceiver.Listener INVALIDATOR = new PackageChangeReceiver.Listener() {
+        @Override
+        public void onPackageChanged(@Nullable final String packageName) {
+            final String cachedPackageName = ReceiverCache.packageName;
+            if (packageName == null || packageName.equals(cachedPackageName)) {
+                clear();
+            }
+        }
+    };
+
+    @Nullable
+    private static volatile String packageName;
+
+    static {
+        PackageChangeReceiver.addListener(INVALIDATOR);
+    }
+
+    private ReceiverCache() {
+        throw new UnsupportedOperationException();
+    }
+
+    static boolean contains(@NonNull final Key key) {
+        return CACHE.containsKey(key);
+    }
+
+    /**
+     * Returns the cached check result.
+     *
+     * @param key The key of the check.
+     * @return {@code null} if there is no cached result, an empty string if the check passed,
+     * the description of the failure otherwise.
+     */
+    @Nullable
+    static String get(@NonNull final Key key) {
+        return CACHE.get(key);
+    }
+
+    /**
+     * Returns the generation of the cache, which is changed when the cache is cleared.
+     * Should be read before the checked data is queried.
+     */
+    static int getGeneration() {
+        return GENERATION.get();
+    }
+
+    /**
+     * Caches the check result unless the cache has been cleared since the data was queried.
+     *
+     * @param key        The key of the check.
+     * @param problem    The description of the failure or {@code null} if the check passed.
+     * @param generation The {@link #getGeneration()} value read before the data was queried.
+     */
+    static void put(@NonNull final Key key, @Nullable final String problem, final int generation) {
+        packageName = key.packageName;
+        final Key cachedKey = key.copy();
+        final String cachedResult = problem == null ? PASSED : problem;
+        CACHE.put(cachedKey, cachedResult);
+        // The generation is changed before the cache is cleared, so a concurrent clear() either removes
+        // the result itself or is noticed here
+        if (generation != GENERATION.get()) {
+            CACHE.remove(cachedKey, cachedResult);
+        }
+    }
+
+    static boolean isPassed(@NonNull final String cachedResult) {
+        return cachedResult.length() == 0;
+    }
+
+    static void clear() {
+        GENERATION.incrementAndGet();
+        CACHE.clear();
+    }
+
+    static final class Key {
+
+        @NonNull
+        private final String packageName;
+        @NonNull
+        private final Intent intent;
+        @Nullable
+        private final String receiverName;
+        @Nullable
+        private final String permission;
+
+        Key(@NonNull final Context context,
+            @NonNull final Intent intent,
+            @Nullable final String receiverName,
+            @Nullable final String permission) {
+            this(context.getPackageName(), intent, receiverName, permission);
+        }
+
+        private Key(@NonNull final String packageName,
+                    @NonNull final Intent intent,
+                    @Nullable final String receiverName,
+                    @Nullable final String permission) {
+            this.packageName = packageName;
+            this.intent = intent;
+            this.receiverName = receiverName;
+            this.permission = permission;
+        }
+
+        /**
+         * Copies the key, so changes of the original intent don't affect the cache.
+         */
+        @NonNull
+        private Key copy() {
+            return new Key(packageName, new Intent(intent), receiverName, permission);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key key = (Key) o;
+            return packageName.equals(key.packageName)
+                    && intent.filterEquals(key.intent)
+                    && TextUtils.equals(receiverName, key.receiverName)
+                    && TextUtils.equals(permission, key.permission);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = packageName.hashCode();
+            result = 31 * result + intent.filterHashCode();
+            result = 31 * result + (receiverName == null ? 0 : receiverName.hashCode());
+            result = 31 * result + (permission == null ? 0 : permission.hashCode());
+            return result;
+        }
+    }
+}
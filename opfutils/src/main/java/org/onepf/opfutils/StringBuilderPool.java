@@ -0,0 +1,92 @@
+/*
+ * Copyright 2012-2015 One Platform Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onepf.opfutils;
+
+import android.support.annotation.NonNull;
+
+/**
+ * The per-thread pool of the reusable {@link StringBuilder}s.
+ * <p/>
+ * Each thread retains up to {@link #POOL_SIZE} builders, so the nested formatting, e.g. of an intent and
+ * its extras, doesn't allocate. The builders which have grown over {@link #MAX_RETAINED_CAPACITY}
+ * aren't retained, so a single large text doesn't stay in memory.
+ * <p/>
+ * Usage:
+ * <pre>
+ * final StringBuilder stringBuilder = StringBuilderPool.obtain();
+ * try {
+ *     return stringBuilder.append(...).toString();
+ * } finally {
+ *     StringBuilderPool.release(stringBuilder);
+ * }
+ * </pre>
+ */
+final class StringBuilderPool {
+
+    static final int MAX_RETAINED_CAPACITY = 8 * 1024;
+    static final int POOL_SIZE = 4;
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private static final ThreadLocal<StringBuilder[]> POOLS = new ThreadLocal<StringBuilder[]>() {
+        @Override
+        protected StringBuilder[] initialValue() {
+            return new StringBuilder[POOL_SIZE];
+        }
+    };
+
+    private StringBuilderPool() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Returns an empty builder of the current thread.
+     *
+     * @return The builder, should be released by {@link #release(StringBuilder)}.
+     */
+    @NonNull
+    static StringBuilder obtain() {
+        final StringBuilder[] pool = POOLS.get();
+        for (int i = pool.length - 1; i >= 0; i--) {
+            final StringBuilder stringBuilder = pool[i];
+            if (stringBuilder != null) {
+                pool[i] = null;
+                return stringBuilder;
+            }
+        }
+        return new StringBuilder(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Returns the builder to the pool of the current thread. The builder must not be used after the call.
+     *
+     * @param stringBuilder The builder obtained by {@link #obtain()}.
+     */
+    static void release(@NonNull final StringBuilder stringBuilder) {
+        if (stringBuilder.capacity() > MAX_RETAINED_CAPACITY) {
+            return;
+        }
+        final StringBuilder[] pool = POOLS.get();
+        for (int i = 0; i < pool.length; i++) {
+            if (pool[i] == null) {
+                stringBuilder.setLength(0);
+                pool[i] = stringBuilder;
+                return;
+            }
+        }
+    }
+}
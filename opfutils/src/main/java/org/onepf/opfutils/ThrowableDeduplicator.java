@@ -0,0 +1,135 @@
+/*
+ * Copyright 2012-2015 One Platform Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onepf.opfutils;
+
+import android.support.annotation.NonNull;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.UnknownHostException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the stack shapes of the recently logged throwables.
+ * <p/>
+ * Two throwables have the same fingerprint if they have the same types and the same stack frames
+ * along the whole cause chain. Messages are ignored. Only the last {@code capacity} fingerprints are kept.
+ */
+final class ThrowableDeduplicator {
+
+    private static final int MAX_CAUSE_DEPTH = 8;
+
+    private final Map<Long, Occurrence> occurrences;
+
+    private int lastId;
+
+    ThrowableDeduplicator(final int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive.");
+        }
+        this.occurrences = new LinkedHashMap<Long, Occurrence>(capacity, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Long, Occurrence> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Renders the throwable. The full stack trace is rendered only for the first occurrence
+     * of the throwable stack shape, the short reference with the repeat count is rendered after that.
+     *
+     * @param throwable The logged throwable.
+     * @return The string representation of the throwable.
+     */
+    @NonNull
+    String render(@NonNull final Throwable throwable) {
+        final long fingerprint = fingerprint(throwable);
+        final int id;
+        final int count;
+        synchronized (occurrences) {
+            Occurrence occurrence = occurrences.get(fingerprint);
+            if (occurrence == null) {
+                occurrence = new Occurrence(++lastId);
+                occurrences.put(fingerprint, occurrence);
+            } else {
+                occurrence.count++;
+            }
+            id = occurrence.id;
+            count = occurrence.count;
+        }
+
+        if (count == 1) {
+            return "#" + id + " " + getStackTraceString(throwable);
+        }
+        return throwable + " (same stack trace as #" + id + ", repeated " + count + " times)";
+    }
+
+    void clear() {
+        synchronized (occurrences) {
+            occurrences.clear();
+        }
+    }
+
+    /**
+     * The same as {@code android.util.Log.getStackTraceString(Throwable)}.
+     */
+    @NonNull
+    static String getStackTraceString(@NonNull final Throwable throwable) {
+        // Don't log UnknownHostException to reduce the log spam when there is no network
+        Throwable current = throwable;
+        while (current != null) {
+            if (current instanceof UnknownHostException) {
+                return "";
+            }
+            current = current.getCause();
+        }
+
+        final StringWriter stringWriter = new StringWriter();
+        final PrintWriter printWriter = new PrintWriter(stringWriter);
+        throwable.printStackTrace(printWriter);
+        printWriter.flush();
+        return stringWriter.toString();
+    }
+
+    static long fingerprint(@NonNull final Throwable throwable) {
+        long hash = 1125899906842597L;
+        Throwable current = throwable;
+        for (int depth = 0; current != null && depth < MAX_CAUSE_DEPTH; depth++) {
+            hash = 31 * hash + current.getClass().getName().hashCode();
+            for (StackTraceElement element : current.getStackTrace()) {
+                hash = 31 * hash + element.getClassName().hashCode();
+                hash = 31 * hash + element.getMethodName().hashCode();
+                hash = 31 * hash + element.getLineNumber();
+            }
+            final Throwable cause = current.getCause();
+            current = cause == current ? null : cause;
+        }
+        return hash;
+    }
+
+    private static final class Occurrence {
+
+        private final int id;
+        private int count = 1;
+
+        private Occurrence(final int id) {
+            this.id = id;
+        }
+    }
+}
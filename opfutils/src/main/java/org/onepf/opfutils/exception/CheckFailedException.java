@@ -0,0 +1,54 @@
+/*
+ * Copyright 2012-2015 One Platform Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onepf.opfutils.exception;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Throws when one or more checks of a batch check failed. Lists all problems.
+ */
+public class CheckFailedException extends IllegalStateException {
+
+    private final List<String> problems;
+
+    public CheckFailedException(final List<String> problems) {
+        super(buildMessage(problems));
+        this.problems = Collections.unmodifiableList(new ArrayList<String>(problems));
+    }
+
+    /**
+     * Builds the message of the exception, which lists all problems.
+     *
+     * @param problems The problems of the failed checks.
+     * @return The message.
+     */
+    public static String buildMessage(final List<String> problems) {
+        final StringBuilder stringBuilder = new StringBuilder()
+                .append(problems.size())
+                .append(" check(s) failed:");
+        for (String problem : problems) {
+            stringBuilder.append("\n - ").append(problem);
+        }
+        return stringBuilder.toString();
+    }
+
+    public List<String> getProblems() {
+        return problems;
+    }
+}
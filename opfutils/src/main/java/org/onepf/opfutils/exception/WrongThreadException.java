@@ -30,6 +30,16 @@ public class WrongThreadException extends IllegalStateException {
         this.mainThreadExpected = mainThreadExpected;
     }
 
+    /**
+     * Creates the exception for the check against a thread other than the main one.
+     *
+     * @param message The detail message.
+     */
+    public WrongThreadException(final String message) {
+        super(message);
+        this.mainThreadExpected = false;
+    }
+
     public boolean isMainThreadExpected() {
         return mainThreadExpected;
     }
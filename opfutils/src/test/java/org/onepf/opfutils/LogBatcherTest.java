@@ -0,0 +1,130 @@
+/*
+ * Copyright 2012-2015 One Platform Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onepf.opfutils;
+
+import android.os.Build;
+import android.util.Log;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.onepf.opfutils.core.OPFLogBatchStats;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLog;
+
+import java.util.Arrays;
+import java.util.List;
+
+@Config(emulateSdk = Build.VERSION_CODES.LOLLIPOP, manifest = Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class LogBatcherTest extends Assert {
+
+    private static final String TAG = "LogBatcherTest";
+    private static final long WINDOW_MILLIS = 60000;
+
+    private LogBatcher batcher;
+
+    @Before
+    public void setUp() {
+        ShadowLog.reset();
+        batcher = new LogBatcher(WINDOW_MILLIS);
+    }
+
+    @After
+    public void tearDown() {
+        batcher.shutdown();
+    }
+
+    @Test
+    public void testRecordsAreGrouped() {
+        final int recordCount = 100;
+        for (int i = 0; i < recordCount; i++) {
+            batcher.println(Log.DEBUG, TAG, "record " + i);
+        }
+        final List<ShadowLog.LogItem> logsBeforeFlush = ShadowLog.getLogsForTag(TAG);
+        assertTrue(logsBeforeFlush == null || logsBeforeFlush.isEmpty());
+
+        batcher.flush();
+        final List<ShadowLog.LogItem> logs = ShadowLog.getLogsForTag(TAG);
+        assertEquals(1, logs.size());
+        assertEquals(recordCount, logs.get(0).msg.split("\n").length);
+
+        final OPFLogBatchStats stats = batcher.getStats();
+        assertEquals(recordCount, stats.getRecordCount());
+        assertEquals(1, stats.getBatchCount());
+        assertEquals(1, stats.getEntryCount());
+        assertEquals(recordCount, stats.getMaxBatchSize());
+    }
+
+    @Test
+    public void testLongRecordIsSplit() {
+        final char[] chars = new char[LogBatcher.MAX_ENTRY_BYTES * 2 + 10];
+        Arrays.fill(chars, 'a');
+        final String message = new String(chars);
+
+        batcher.println(Log.DEBUG, TAG, message);
+        batcher.flush();
+
+        final List<ShadowLog.LogItem> logs = ShadowLog.getLogsForTag(TAG);
+        assertEquals(3, logs.size());
+        final StringBuilder joined = new StringBuilder();
+        for (ShadowLog.LogItem log : logs) {
+            assertTrue(log.msg.length() <= LogBatcher.MAX_ENTRY_BYTES);
+            joined.append(log.msg);
+        }
+        assertEquals(message, joined.toString());
+    }
+
+    @Test
+    public void testDifferentLevelsAreNotJoined() {
+        batcher.println(Log.DEBUG, TAG, "debug");
+        batcher.println(Log.INFO, TAG, "info");
+        batcher.println(Log.DEBUG, TAG, "debug");
+        batcher.flush();
+
+        final List<ShadowLog.LogItem> logs = ShadowLog.getLogsForTag(TAG);
+        assertEquals(3, logs.size());
+        assertEquals(Log.INFO, logs.get(1).type);
+    }
+
+    @Test
+    public void testErrorFlushesImmediately() {
+        batcher.println(Log.DEBUG, TAG, "debug");
+        batcher.println(Log.ERROR, TAG, "error");
+
+        final List<ShadowLog.LogItem> logs = ShadowLog.getLogsForTag(TAG);
+        assertEquals(2, logs.size());
+        assertEquals("debug", logs.get(0).msg);
+        assertEquals("error", logs.get(1).msg);
+    }
+
+    @Test
+    public void testPrintlnAfterShutdown() {
+        batcher.println(Log.DEBUG, TAG, "before");
+        batcher.shutdown();
+        batcher.println(Log.DEBUG, TAG, "after");
+
+        final List<ShadowLog.LogItem> logs = ShadowLog.getLogsForTag(TAG);
+        assertEquals(2, logs.size());
+        assertEquals("before", logs.get(0).msg);
+        assertEquals("after", logs.get(1).msg);
+    }
+}
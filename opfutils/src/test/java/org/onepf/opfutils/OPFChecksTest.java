@@ -16,15 +16,40 @@
 
 package org.onepf.opfutils;
 
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.content.Intent;
+import android.content.pm.ActivityInfo;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+import android.content.pm.ServiceInfo;
+import android.net.Uri;
 import android.os.Build;
+import android.os.Bundle;
+import android.support.annotation.NonNull;
 
 import junit.framework.Assert;
 
+import org.junit.After;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.onepf.opfutils.exception.CheckFailedException;
 import org.onepf.opfutils.exception.WrongThreadException;
+import org.robolectric.Robolectric;
 import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
 import org.robolectric.annotation.Config;
+import org.robolectric.res.builder.RobolectricPackageManager;
+import org.robolectric.util.Scheduler;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.robolectric.Shadows.shadowOf;
 
 /**
  * @author antonpp
@@ -34,6 +59,290 @@ import org.robolectric.annotation.Config;
 @RunWith(RobolectricTestRunner.class)
 public class OPFChecksTest {
 
+    private static final String TEST_PACKAGE_NAME = "org.onepf.opfutils.test.checks";
+    private static final String PERMISSION = "org.onepf.opfutils.test.PERMISSION";
+    private static final String METADATA_KEY = "org.onepf.opfutils.test.METADATA";
+    private static final String SERVICE_NAME = "org.onepf.opfutils.test.Service";
+    private static final String RECEIVER_NAME = "org.onepf.opfutils.test.Receiver";
+    private static final String ACTION = "org.onepf.opfutils.test.ACTION";
+    private static final long ASYNC_TIMEOUT_SECONDS = 10;
+
+    @After
+    public void tearDown() {
+        ManifestIndex.invalidate();
+        ReceiverCache.clear();
+        PermissionCache.clear();
+    }
+
+    @Test
+    public void testManifestIndex() {
+        final Context context = RuntimeEnvironment.application;
+        final PackageInfo packageInfo = createTestPackageInfo();
+        ((RobolectricPackageManager) context.getPackageManager()).addPackage(packageInfo);
+        shadowOf(RuntimeEnvironment.application).setPackageName(TEST_PACKAGE_NAME);
+
+        Assert.assertTrue(OPFChecks.hasPermission(context, PERMISSION));
+        Assert.assertFalse(OPFChecks.hasPermission(context, PERMISSION + "_OTHER"));
+        Assert.assertTrue(OPFChecks.hasMetadata(context, METADATA_KEY));
+        Assert.assertFalse(OPFChecks.hasMetadata(context, METADATA_KEY + "_OTHER"));
+        OPFChecks.checkService(context, new ComponentName(TEST_PACKAGE_NAME, SERVICE_NAME));
+
+        // The index is cached until it's invalidated
+        packageInfo.requestedPermissions = new String[0];
+        Assert.assertTrue(OPFChecks.hasPermission(context, PERMISSION));
+        ManifestIndex.invalidate();
+        Assert.assertFalse(OPFChecks.hasPermission(context, PERMISSION));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testCheckServiceNotDeclared() {
+        final Context context = RuntimeEnvironment.application;
+        ((RobolectricPackageManager) context.getPackageManager()).addPackage(createTestPackageInfo());
+        shadowOf(RuntimeEnvironment.application).setPackageName(TEST_PACKAGE_NAME);
+
+        OPFChecks.checkService(context, new ComponentName(TEST_PACKAGE_NAME, SERVICE_NAME + "Other"));
+    }
+
+    @Test
+    public void testBatchReportsAllProblems() {
+        final Context context = RuntimeEnvironment.application;
+        ((RobolectricPackageManager) context.getPackageManager()).addPackage(createTestPackageInfo());
+        shadowOf(RuntimeEnvironment.application).setPackageName(TEST_PACKAGE_NAME);
+
+        final OPFCheckReport report = OPFChecks.batch(context)
+                .requirePermission(PERMISSION)
+                .requirePermission(PERMISSION + "_OTHER")
+                .requireMetadata(METADATA_KEY)
+                .requireMetadata(METADATA_KEY + "_OTHER")
+                .requireService(new ComponentName(TEST_PACKAGE_NAME, SERVICE_NAME))
+                .check();
+
+        Assert.assertFalse(report.isPassed());
+        Assert.assertEquals(2, report.getProblems().size());
+        Assert.assertTrue(report.getProblems().get(0).contains(PERMISSION + "_OTHER"));
+        Assert.assertTrue(report.getProblems().get(1).contains(METADATA_KEY + "_OTHER"));
+    }
+
+    @Test
+    public void testBatchPassed() {
+        final Context context = RuntimeEnvironment.application;
+        ((RobolectricPackageManager) context.getPackageManager()).addPackage(createTestPackageInfo());
+        shadowOf(RuntimeEnvironment.application).setPackageName(TEST_PACKAGE_NAME);
+
+        final OPFCheckReport report = OPFChecks.batch(context)
+                .requirePermission(PERMISSION)
+                .requireMetadata(METADATA_KEY)
+                .check();
+
+        Assert.assertTrue(report.isPassed());
+        report.throwIfFailed();
+    }
+
+    @Test(expected = CheckFailedException.class)
+    public void testBatchValidate() {
+        final Context context = RuntimeEnvironment.application;
+        ((RobolectricPackageManager) context.getPackageManager()).addPackage(createTestPackageInfo());
+        shadowOf(RuntimeEnvironment.application).setPackageName(TEST_PACKAGE_NAME);
+
+        OPFChecks.batch(context)
+                .requirePermission(PERMISSION + "_OTHER")
+                .validate();
+    }
+
+    @Test
+    public void testBatchCheckAsync() throws Exception {
+        final Context context = RuntimeEnvironment.application;
+        ((RobolectricPackageManager) context.getPackageManager()).addPackage(createTestPackageInfo());
+        shadowOf(RuntimeEnvironment.application).setPackageName(TEST_PACKAGE_NAME);
+
+        final OPFCheckReport report = OPFChecks.batch(context)
+                .requirePermission(PERMISSION + "_OTHER")
+                .checkAsync()
+                .get(ASYNC_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        Assert.assertFalse(report.isPassed());
+        Assert.assertEquals(1, report.getProblems().size());
+    }
+
+    @Test
+    public void testBatchCheckAsyncFailure() throws Exception {
+        final RuntimeException error = new IllegalStateException("Package manager has died");
+        final Context context = new ContextWrapper(RuntimeEnvironment.application) {
+            @Override
+            public Context getApplicationContext() {
+                return this;
+            }
+
+            @Override
+            public PackageManager getPackageManager() {
+                throw error;
+            }
+        };
+        final OPFCheckReport[] deliveredReport = new OPFCheckReport[1];
+        final Scheduler scheduler = Robolectric.getForegroundThreadScheduler();
+        scheduler.pause();
+
+        final Future<OPFCheckReport> future = OPFChecks.batch(context)
+                .requirePermission(PERMISSION)
+                .failFast(true)
+                .checkAsync(new OPFCheckBatch.Callback() {
+                    @Override
+                    public void onChecked(@NonNull final OPFCheckReport report) {
+                        deliveredReport[0] = report;
+                    }
+                });
+        try {
+            future.get(ASYNC_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            Assert.fail("The check exception hasn't been propagated to the future.");
+        } catch (ExecutionException e) {
+            Assert.assertSame(error, e.getCause());
+        }
+
+        try {
+            scheduler.advanceToLastPostedRunnable();
+            Assert.fail("The check exception hasn't been rethrown on the main thread.");
+        } catch (IllegalStateException e) {
+            Assert.assertSame(error, e);
+        }
+        Assert.assertNotNull(deliveredReport[0]);
+        Assert.assertFalse(deliveredReport[0].isPassed());
+    }
+
+    @Test
+    public void testReceiverCache() {
+        final Context context = RuntimeEnvironment.application;
+        final RobolectricPackageManager packageManager = (RobolectricPackageManager) context.getPackageManager();
+        packageManager.addPackage(createTestPackageInfo());
+        shadowOf(RuntimeEnvironment.application).setPackageName(TEST_PACKAGE_NAME);
+
+        final ResolveInfo resolveInfo = new ResolveInfo();
+        resolveInfo.activityInfo = new ActivityInfo();
+        resolveInfo.activityInfo.packageName = TEST_PACKAGE_NAME;
+        resolveInfo.activityInfo.name = RECEIVER_NAME;
+        final Intent queryIntent = new Intent(ACTION).setPackage(TEST_PACKAGE_NAME);
+        packageManager.addResolveInfoForIntent(queryIntent, resolveInfo);
+
+        OPFChecks.checkReceiver(context, RECEIVER_NAME, new Intent(ACTION));
+
+        // The result is cached until the package is changed
+        packageManager.removeResolveInfosForIntent(queryIntent, TEST_PACKAGE_NAME);
+        OPFChecks.checkReceiver(context, RECEIVER_NAME, new Intent(ACTION));
+
+        PackageChangeReceiver.notifyPackageChanged(TEST_PACKAGE_NAME);
+        try {
+            OPFChecks.checkReceiver(context, RECEIVER_NAME, new Intent(ACTION));
+            Assert.fail("The receiver cache hasn't been invalidated.");
+        } catch (IllegalStateException ignore) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testReceiverCacheDropsResultsOfInvalidatedQueries() {
+        final Context context = RuntimeEnvironment.application;
+        final ReceiverCache.Key key = new ReceiverCache.Key(context, new Intent(ACTION), RECEIVER_NAME, null);
+
+        final int generation = ReceiverCache.getGeneration();
+        // The package is changed while the receivers are queried
+        ReceiverCache.clear();
+        ReceiverCache.put(key, null, generation);
+        Assert.assertFalse(ReceiverCache.contains(key));
+
+        ReceiverCache.put(key, null, ReceiverCache.getGeneration());
+        Assert.assertTrue(ReceiverCache.contains(key));
+    }
+
+    @Test
+    public void testChecksDontRegisterPackageReceiver() {
+        final Context context = RuntimeEnvironment.application;
+        ((RobolectricPackageManager) context.getPackageManager()).addPackage(createTestPackageInfo());
+        shadowOf(RuntimeEnvironment.application).setPackageName(TEST_PACKAGE_NAME);
+
+        OPFChecks.hasPermission(context, PERMISSION);
+        try {
+            OPFChecks.checkReceiver(context, RECEIVER_NAME, new Intent(ACTION));
+        } catch (IllegalStateException ignore) {
+            // the receiver isn't declared
+        }
+
+        final Intent packageChangedIntent = new Intent(Intent.ACTION_PACKAGE_CHANGED,
+                Uri.parse("package:" + TEST_PACKAGE_NAME));
+        Assert.assertFalse(shadowOf(RuntimeEnvironment.application).hasReceiverForIntent(packageChangedIntent));
+    }
+
+    @Test
+    public void testPermissionCache() throws Exception {
+        final Context context = RuntimeEnvironment.application;
+        final String permission = "android.permission.CAMERA";
+        final boolean[] notifiedState = new boolean[1];
+        final OPFChecks.PermissionListener listener = new OPFChecks.PermissionListener() {
+            @Override
+            public void onPermissionChanged(@NonNull final String changedPermission, final boolean isGranted) {
+                Assert.assertEquals(permission, changedPermission);
+                notifiedState[0] = isGranted;
+            }
+        };
+        OPFChecks.addPermissionListener(listener);
+        try {
+            shadowOf(RuntimeEnvironment.application).denyPermissions(permission);
+            Assert.assertFalse(OPFChecks.isPermissionGranted(context, permission));
+
+            // The permission is granted in background, the refresh queries the states on a background thread
+            // and notifies the listeners on the main thread
+            shadowOf(RuntimeEnvironment.application).grantPermissions(permission);
+            PermissionCache.refresh().get(ASYNC_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            Robolectric.getForegroundThreadScheduler().advanceToLastPostedRunnable();
+            Assert.assertTrue(notifiedState[0]);
+            Assert.assertTrue(OPFChecks.isPermissionGranted(context, permission));
+        } finally {
+            OPFChecks.removePermissionListener(listener);
+        }
+    }
+
+    @Test
+    public void testPermissionGrantedWithoutRefresh() throws Exception {
+        final Context context = RuntimeEnvironment.application;
+        final String permission = "android.permission.RECORD_AUDIO";
+        final boolean[] isNotified = new boolean[1];
+        final OPFChecks.PermissionListener listener = new OPFChecks.PermissionListener() {
+            @Override
+            public void onPermissionChanged(@NonNull final String changedPermission, final boolean isGranted) {
+                isNotified[0] = true;
+            }
+        };
+        OPFChecks.addPermissionListener(listener);
+        try {
+            shadowOf(RuntimeEnvironment.application).denyPermissions(permission);
+            Assert.assertFalse(OPFChecks.isPermissionGranted(context, permission));
+
+            // The denied state isn't cached, so the permission granted by a request is seen right away
+            shadowOf(RuntimeEnvironment.application).grantPermissions(permission);
+            Assert.assertTrue(OPFChecks.isPermissionGranted(context, permission));
+
+            // The granted state is cached, the refresh doesn't report it as changed
+            PermissionCache.refresh().get(ASYNC_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            Robolectric.getForegroundThreadScheduler().advanceToLastPostedRunnable();
+            Assert.assertFalse(isNotified[0]);
+        } finally {
+            OPFChecks.removePermissionListener(listener);
+        }
+    }
+
+    private static PackageInfo createTestPackageInfo() {
+        final PackageInfo packageInfo = new PackageInfo();
+        packageInfo.packageName = TEST_PACKAGE_NAME;
+        packageInfo.requestedPermissions = new String[]{PERMISSION};
+        packageInfo.applicationInfo = new ApplicationInfo();
+        packageInfo.applicationInfo.packageName = TEST_PACKAGE_NAME;
+        packageInfo.applicationInfo.metaData = new Bundle();
+        packageInfo.applicationInfo.metaData.putString(METADATA_KEY, "value");
+        final ServiceInfo serviceInfo = new ServiceInfo();
+        serviceInfo.packageName = TEST_PACKAGE_NAME;
+        serviceInfo.name = SERVICE_NAME;
+        packageInfo.services = new ServiceInfo[]{serviceInfo};
+        return packageInfo;
+    }
+
     @Test
     public void testCheckThreadNoExceptions() throws InterruptedException {
         ExceptionCheck exceptionCheck = new ExceptionCheck();
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2012-2015 One Platform Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onepf.opfutils;
+
+import android.content.Context;
+import android.os.Build;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.onepf.opfutils.core.OPFHistogram;
+import org.onepf.opfutils.core.OPFMetrics;
+import org.onepf.opfutils.core.OPFMetricsSnapshot;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+@Config(emulateSdk = Build.VERSION_CODES.LOLLIPOP, manifest = Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class OPFComponentMetricsTest extends Assert {
+
+    @Test
+    public void testComponentMetrics() {
+        final Context context = RuntimeEnvironment.application;
+        final OPFMetricsSnapshot before = OPFMetrics.snapshot();
+
+        OPFLog.setEnabled(true, true);
+        OPFLog.d("Debug message");
+        OPFLog.e("Error message");
+        OPFLog.setEnabled(false, false);
+        new OPFPreferences(context).put("key", "value");
+        OPFUtils.isInstalled(context, "org.onepf.opfutils.test.metrics");
+
+        final OPFMetricsSnapshot after = OPFMetrics.snapshot();
+        assertEquals(1, getDelta(before, after, OPFMetrics.LOG_RECORDS_PREFIX + "debug"));
+        assertEquals(1, getDelta(before, after, OPFMetrics.LOG_RECORDS_PREFIX + "error"));
+        assertEquals(1, getDelta(before, after, OPFMetrics.PACKAGE_MANAGER_CALLS));
+        assertEquals(1, getCount(after, OPFMetrics.PREFERENCES_APPLY_LATENCY)
+                - getCount(before, OPFMetrics.PREFERENCES_APPLY_LATENCY));
+    }
+
+    @Test
+    public void testDisabled() {
+        OPFMetrics.setEnabled(false);
+        try {
+            final long before = OPFMetrics.snapshot().getCounter(OPFMetrics.PACKAGE_MANAGER_CALLS);
+            OPFUtils.isInstalled(RuntimeEnvironment.application, "org.onepf.opfutils.test.metrics");
+            assertEquals(before, OPFMetrics.snapshot().getCounter(OPFMetrics.PACKAGE_MANAGER_CALLS));
+        } finally {
+            OPFMetrics.setEnabled(true);
+        }
+    }
+
+    private static long getDelta(final OPFMetricsSnapshot before,
+                                 final OPFMetricsSnapshot after,
+                                 final String counter) {
+        return after.getCounter(counter) - before.getCounter(counter);
+    }
+
+    private static long getCount(final OPFMetricsSnapshot snapshot, final String histogramName) {
+        // The histogram is registered when a component records it for the first time
+        final OPFHistogram histogram = snapshot.getHistogram(histogramName);
+        return histogram == null ? 0 : histogram.getCount();
+    }
+}
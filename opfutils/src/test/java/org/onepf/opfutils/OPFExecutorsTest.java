@@ -0,0 +1,109 @@
+/*
+ * Copyright 2012-2015 One Platform Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onepf.opfutils;
+
+import android.os.Build;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.onepf.opfutils.core.OPFMetrics;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.util.Scheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+@Config(emulateSdk = Build.VERSION_CODES.LOLLIPOP, manifest = Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class OPFExecutorsTest extends Assert {
+
+    private static final long TIMEOUT_SECONDS = 10;
+    private static final int TASK_COUNT = 3;
+
+    @Test
+    public void testBackground() throws InterruptedException {
+        final long waitCount = OPFMetrics.histogram(OPFMetrics.BACKGROUND_WAIT_TIME).getCount();
+        final CountDownLatch latch = new CountDownLatch(1);
+        final Thread[] thread = new Thread[1];
+        OPFExecutors.background().execute(new Runnable() {
+            @Override
+            public void run() {
+                thread[0] = Thread.currentThread();
+                latch.countDown();
+            }
+        });
+
+        assertTrue(latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertTrue(thread[0].isDaemon());
+        assertTrue(thread[0].getName().startsWith("OPFUtils #"));
+        assertEquals(waitCount + 1, OPFMetrics.histogram(OPFMetrics.BACKGROUND_WAIT_TIME).getCount());
+    }
+
+    @Test
+    public void testMainThreadInline() {
+        final boolean[] isRun = new boolean[1];
+        OPFExecutors.mainThread().execute(new Runnable() {
+            @Override
+            public void run() {
+                isRun[0] = true;
+            }
+        });
+        assertTrue(isRun[0]);
+    }
+
+    @Test
+    public void testMainThreadBatching() throws InterruptedException {
+        final Scheduler scheduler = Robolectric.getForegroundThreadScheduler();
+        scheduler.pause();
+        final List<Integer> runTasks = new ArrayList<Integer>();
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < TASK_COUNT; i++) {
+                    final int index = i;
+                    OPFExecutors.mainThread().execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            runTasks.add(index);
+                        }
+                    });
+                }
+            }
+        });
+        thread.start();
+        thread.join();
+
+        // All tasks are run by a single message
+        assertEquals(1, scheduler.size());
+        assertEquals(TASK_COUNT, OPFMetrics.snapshot().getGauge(OPFMetrics.MAIN_THREAD_QUEUE_DEPTH).longValue());
+        assertTrue(runTasks.isEmpty());
+
+        scheduler.advanceToLastPostedRunnable();
+        assertEquals(0, scheduler.size());
+        assertEquals(0, OPFMetrics.snapshot().getGauge(OPFMetrics.MAIN_THREAD_QUEUE_DEPTH).longValue());
+        assertEquals(TASK_COUNT, runTasks.size());
+        for (int i = 0; i < TASK_COUNT; i++) {
+            assertEquals(i, runTasks.get(i).intValue());
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2012-2015 One Platform Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onepf.opfutils;
+
+import android.os.Build;
+import android.util.Log;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@Config(emulateSdk = Build.VERSION_CODES.LOLLIPOP, manifest = Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class OPFLoggerTest extends Assert {
+
+    private static final String TAG = "OPFLoggerTest";
+
+    @After
+    public void tearDown() {
+        OPFLog.resetLevel(TAG);
+        OPFLog.setEnabled(false, false);
+    }
+
+    @Test
+    public void testGetLoggerIsCached() {
+        assertSame(OPFLog.getLogger(TAG), OPFLog.getLogger(TAG));
+        assertEquals(TAG, OPFLog.getLogger(TAG).getTag());
+    }
+
+    @Test
+    public void testSetLevel() {
+        final OPFLogger logger = OPFLog.getLogger(TAG);
+
+        OPFLog.setLevel(TAG, Log.WARN);
+        assertFalse(logger.isLoggable(Log.INFO));
+        assertTrue(logger.isLoggable(Log.WARN));
+        assertTrue(logger.isLoggable(Log.ERROR));
+
+        OPFLog.setLevel(TAG, OPFLogger.SILENT);
+        assertFalse(logger.isLoggable(Log.ASSERT));
+    }
+
+    @Test
+    public void testLevelDoesNotAffectOtherLoggers() {
+        final OPFLogger logger = OPFLog.getLogger(TAG);
+        final OPFLogger otherLogger = OPFLog.getLogger(TAG + "2");
+        OPFLog.setEnabled(true, true);
+        OPFLog.setLevel(TAG, OPFLogger.SILENT);
+
+        assertFalse(logger.isLoggable(Log.ERROR));
+        assertTrue(otherLogger.isLoggable(Log.VERBOSE));
+    }
+
+    @Test
+    public void testFollowsGlobalSettings() {
+        final OPFLogger logger = OPFLog.getLogger(TAG);
+
+        OPFLog.setEnabled(true, true);
+        assertTrue(logger.isLoggable(Log.VERBOSE));
+
+        OPFLog.setEnabled(false, true);
+        assertFalse(logger.isLoggable(Log.DEBUG));
+        assertTrue(logger.isLoggable(Log.INFO));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooLongTag() {
+        OPFLog.getLogger("OPFLoggerTestTooLongTagName");
+    }
+}
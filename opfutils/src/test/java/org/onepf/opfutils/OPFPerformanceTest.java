@@ -0,0 +1,461 @@
+/*
+ * Copyright 2012-2015 One Platform Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onepf.opfutils;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+import android.content.pm.ServiceInfo;
+import android.os.Build;
+import android.os.Bundle;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.res.builder.DefaultPackageManager;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * The allocation and call count budgets of the hot paths.
+ */
+@Config(emulateSdk = Build.VERSION_CODES.LOLLIPOP, manifest = Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class OPFPerformanceTest extends Assert {
+
+    private static final String TEST_PACKAGE_NAME = "org.onepf.opfutils.test.performance";
+    private static final String PERMISSION = "org.onepf.opfutils.test.PERMISSION";
+    private static final String METADATA_KEY = "org.onepf.opfutils.test.METADATA";
+    private static final String SERVICE_NAME = "org.onepf.opfutils.test.Service";
+
+    private static final int WARMUP_ITERATIONS = 20000;
+    private static final int MEASURED_ITERATIONS = 100000;
+
+    private CountingPackageManager packageManager;
+
+    @Before
+    public void setUp() {
+        packageManager = new CountingPackageManager();
+        RuntimeEnvironment.setRobolectricPackageManager(packageManager);
+        packageManager.addPackage(createTestPackageInfo());
+        shadowOf(RuntimeEnvironment.application).setPackageName(TEST_PACKAGE_NAME);
+        ManifestIndex.invalidate();
+        ReceiverCache.clear();
+        AppInfo.clear();
+    }
+
+    @After
+    public void tearDown() {
+        ManifestIndex.invalidate();
+        ReceiverCache.clear();
+        AppInfo.clear();
+        OPFLog.setEnabled(false, false);
+    }
+
+    @Test
+    public void testSuppressedLogDoesNotAllocate() {
+        final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        final Method allocatedBytesMethod = getAllocatedBytesMethod(threadMXBean);
+        Assume.assumeNotNull(allocatedBytesMethod);
+
+        OPFLog.setEnabled(false, false);
+        final long allocated = getAllocatedBytes(threadMXBean, allocatedBytesMethod, new Runnable() {
+            @Override
+            public void run() {
+                OPFLog.d("Suppressed message");
+            }
+        });
+        // Any allocation per call would be multiplied by the number of iterations
+        assertTrue("Suppressed OPFLog.d allocated " + allocated + " bytes", allocated < MEASURED_ITERATIONS);
+    }
+
+    @Test
+    public void testSuppressedFormatLogDoesNotAllocate() {
+        final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        final Method allocatedBytesMethod = getAllocatedBytesMethod(threadMXBean);
+        Assume.assumeNotNull(allocatedBytesMethod);
+
+        OPFLog.setEnabled(false, false);
+        // The caller boxes the arguments and creates the varargs array, so both are created once
+        final Object[] args = {"argument", Integer.valueOf(MEASURED_ITERATIONS)};
+        final long allocated = getAllocatedBytes(threadMXBean, allocatedBytesMethod, new Runnable() {
+            @Override
+            public void run() {
+                OPFLog.d("Suppressed %s %d", args);
+            }
+        });
+        // The message isn't formatted if the log is suppressed
+        assertTrue("Suppressed OPFLog.d with format allocated " + allocated + " bytes",
+                allocated < MEASURED_ITERATIONS);
+    }
+
+    @Test
+    public void testBatchChecksQueryPackageOnce() {
+        final Context context = RuntimeEnvironment.application;
+        final OPFCheckBatch batch = OPFChecks.batch(context)
+                .requirePermission(PERMISSION)
+                .requireMetadata(METADATA_KEY)
+                .requireService(new ComponentName(TEST_PACKAGE_NAME, SERVICE_NAME));
+
+        assertTrue(batch.check().isPassed());
+        assertEquals(1, packageManager.getCallCount());
+
+        assertTrue(batch.check().isPassed());
+        assertTrue(OPFChecks.hasPermission(context, PERMISSION));
+        assertTrue(OPFChecks.hasMetadata(context, METADATA_KEY));
+        assertEquals(1, packageManager.getCallCount());
+    }
+
+    @Test
+    public void testAppInfoQueriedOnce() {
+        final Context context = RuntimeEnvironment.application;
+        for (int i = 0; i < 10; i++) {
+            OPFUtils.getAppVersion(context);
+            OPFUtils.getPackageInstaller(context);
+            OPFUtils.isSystemApp(context, TEST_PACKAGE_NAME);
+        }
+        // The package info and the installer are separate queries, both are made once
+        assertEquals(2, packageManager.getCallCount());
+    }
+
+    @Test
+    public void testPreferenceWritesBounded() {
+        final CountingContext context = new CountingContext(RuntimeEnvironment.application);
+        final OPFPreferences preferences = new OPFPreferences(context);
+
+        // At most one write per edit
+        preferences.put("string", "value");
+        preferences.put("int", 1);
+        preferences.put("long", 1L);
+        preferences.put("boolean", true);
+        preferences.put("float", 1F);
+        preferences.remove("int");
+        final int edits = 6;
+        assertTrue("Preferences wrote " + context.getWriteCount() + " times for " + edits + " edits",
+                context.getWriteCount() <= edits);
+
+        // An edit of many values is a single write
+        final Set<String> values = new HashSet<String>();
+        for (int i = 0; i < 100; i++) {
+            values.add("value" + i);
+        }
+        int writeCount = context.getWriteCount();
+        preferences.put("set", values);
+        assertEquals(writeCount + 1, context.getWriteCount());
+
+        writeCount = context.getWriteCount();
+        preferences.clear();
+        assertEquals(writeCount + 1, context.getWriteCount());
+
+        // The reads don't write
+        writeCount = context.getWriteCount();
+        preferences.getString("string");
+        preferences.getInt("int");
+        preferences.getStringSet("set");
+        preferences.contains("long");
+        assertEquals(writeCount, context.getWriteCount());
+    }
+
+    @SuppressWarnings("PMD.AvoidCatchingGenericException")
+    private static Method getAllocatedBytesMethod(final ThreadMXBean threadMXBean) {
+        try {
+            final Class<?> sunThreadMXBean = Class.forName("com.sun.management.ThreadMXBean");
+            if (!sunThreadMXBean.isInstance(threadMXBean)) {
+                return null;
+            }
+            final Method method = sunThreadMXBean.getMethod("getThreadAllocatedBytes", long.class);
+            final Method isSupported = sunThreadMXBean.getMethod("isThreadAllocatedMemorySupported");
+            final Method isEnabled = sunThreadMXBean.getMethod("isThreadAllocatedMemoryEnabled");
+            if (!(Boolean) isSupported.invoke(threadMXBean) || !(Boolean) isEnabled.invoke(threadMXBean)) {
+                return null;
+            }
+            return method;
+        } catch (Exception ignore) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the number of bytes allocated by the measured iterations of the action after the warmup.
+     */
+    private static long getAllocatedBytes(final ThreadMXBean threadMXBean, final Method allocatedBytesMethod,
+                                          final Runnable action) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            action.run();
+        }
+
+        final long overhead = getAllocatedBytes(threadMXBean, allocatedBytesMethod)
+                - getAllocatedBytes(threadMXBean, allocatedBytesMethod);
+        final long start = getAllocatedBytes(threadMXBean, allocatedBytesMethod);
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            action.run();
+        }
+        return getAllocatedBytes(threadMXBean, allocatedBytesMethod) - start + overhead;
+    }
+
+    private static long getAllocatedBytes(final ThreadMXBean threadMXBean, final Method allocatedBytesMethod) {
+        try {
+            return (Long) allocatedBytesMethod.invoke(threadMXBean, Thread.currentThread().getId());
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static PackageInfo createTestPackageInfo() {
+        final PackageInfo packageInfo = new PackageInfo();
+        packageInfo.packageName = TEST_PACKAGE_NAME;
+        packageInfo.requestedPermissions = new String[]{PERMISSION};
+        packageInfo.applicationInfo = new ApplicationInfo();
+        packageInfo.applicationInfo.packageName = TEST_PACKAGE_NAME;
+        packageInfo.applicationInfo.metaData = new Bundle();
+        packageInfo.applicationInfo.metaData.putString(METADATA_KEY, "value");
+        final ServiceInfo serviceInfo = new ServiceInfo();
+        serviceInfo.packageName = TEST_PACKAGE_NAME;
+        serviceInfo.name = SERVICE_NAME;
+        packageInfo.services = new ServiceInfo[]{serviceInfo};
+        return packageInfo;
+    }
+
+    /**
+     * Counts the package manager queries, each of them is a binder call on a device.
+     */
+    private static final class CountingPackageManager extends DefaultPackageManager {
+
+        private int callCount;
+
+        private CountingPackageManager() {
+            super(Robolectric.getShadowsAdapter());
+        }
+
+        int getCallCount() {
+            return callCount;
+        }
+
+        @Override
+        public PackageInfo getPackageInfo(final String packageName, final int flags)
+                throws PackageManager.NameNotFoundException {
+            callCount++;
+            return super.getPackageInfo(packageName, flags);
+        }
+
+        @Override
+        public ApplicationInfo getApplicationInfo(final String packageName, final int flags)
+                throws PackageManager.NameNotFoundException {
+            callCount++;
+            return super.getApplicationInfo(packageName, flags);
+        }
+
+        @Override
+        public ServiceInfo getServiceInfo(final ComponentName className, final int flags)
+                throws PackageManager.NameNotFoundException {
+            callCount++;
+            return super.getServiceInfo(className, flags);
+        }
+
+        @Override
+        public List<ResolveInfo> queryBroadcastReceivers(final Intent intent, final int flags) {
+            callCount++;
+            return super.queryBroadcastReceivers(intent, flags);
+        }
+
+        @Override
+        public List<PackageInfo> getInstalledPackages(final int flags) {
+            callCount++;
+            return super.getInstalledPackages(flags);
+        }
+
+        @Override
+        public String getInstallerPackageName(final String packageName) {
+            callCount++;
+            return super.getInstallerPackageName(packageName);
+        }
+    }
+
+    /**
+     * Counts the {@link SharedPreferences.Editor#apply()} and {@link SharedPreferences.Editor#commit()} calls,
+     * each of them is a disk write on a device.
+     */
+    private static final class CountingContext extends ContextWrapper {
+
+        private int writeCount;
+
+        private CountingContext(final Context base) {
+            super(base);
+        }
+
+        int getWriteCount() {
+            return writeCount;
+        }
+
+        @Override
+        public SharedPreferences getSharedPreferences(final String name, final int mode) {
+            final SharedPreferences preferences = super.getSharedPreferences(name, mode);
+            return new SharedPreferences() {
+                @Override
+                public Map<String, ?> getAll() {
+                    return preferences.getAll();
+                }
+
+                @Override
+                public String getString(final String key, final String defValue) {
+                    return preferences.getString(key, defValue);
+                }
+
+                @Override
+                public Set<String> getStringSet(final String key, final Set<String> defValues) {
+                    return preferences.getStringSet(key, defValues);
+                }
+
+                @Override
+                public int getInt(final String key, final int defValue) {
+                    return preferences.getInt(key, defValue);
+                }
+
+                @Override
+                public long getLong(final String key, final long defValue) {
+                    return preferences.getLong(key, defValue);
+                }
+
+                @Override
+                public float getFloat(final String key, final float defValue) {
+                    return preferences.getFloat(key, defValue);
+                }
+
+                @Override
+                public boolean getBoolean(final String key, final boolean defValue) {
+                    return preferences.getBoolean(key, defValue);
+                }
+
+                @Override
+                public boolean contains(final String key) {
+                    return preferences.contains(key);
+                }
+
+                @Override
+                public Editor edit() {
+                    return new CountingEditor(preferences.edit());
+                }
+
+                @Override
+                public void registerOnSharedPreferenceChangeListener(
+                        final OnSharedPreferenceChangeListener listener) {
+                    preferences.registerOnSharedPreferenceChangeListener(listener);
+                }
+
+                @Override
+                public void unregisterOnSharedPreferenceChangeListener(
+                        final OnSharedPreferenceChangeListener listener) {
+                    preferences.unregisterOnSharedPreferenceChangeListener(listener);
+                }
+            };
+        }
+
+        private final class CountingEditor implements SharedPreferences.Editor {
+
+            private final SharedPreferences.Editor editor;
+
+            private CountingEditor(final SharedPreferences.Editor editor) {
+                this.editor = editor;
+            }
+
+            @Override
+            public SharedPreferences.Editor putString(final String key, final String value) {
+                editor.putString(key, value);
+                return this;
+            }
+
+            @Override
+            public SharedPreferences.Editor putStringSet(final String key, final Set<String> values) {
+                editor.putStringSet(key, values);
+                return this;
+            }
+
+            @Override
+            public SharedPreferences.Editor putInt(final String key, final int value) {
+                editor.putInt(key, value);
+                return this;
+            }
+
+            @Override
+            public SharedPreferences.Editor putLong(final String key, final long value) {
+                editor.putLong(key, value);
+                return this;
+            }
+
+            @Override
+            public SharedPreferences.Editor putFloat(final String key, final float value) {
+                editor.putFloat(key, value);
+                return this;
+            }
+
+            @Override
+            public SharedPreferences.Editor putBoolean(final String key, final boolean value) {
+                editor.putBoolean(key, value);
+                return this;
+            }
+
+            @Override
+            public SharedPreferences.Editor remove(final String key) {
+                editor.remove(key);
+                return this;
+            }
+
+            @Override
+            public SharedPreferences.Editor clear() {
+                editor.clear();
+                return this;
+            }
+
+            @Override
+            public boolean commit() {
+                writeCount++;
+                return editor.commit();
+            }
+
+            @Override
+            public void apply() {
+                writeCount++;
+                editor.apply();
+            }
+        }
+    }
+}
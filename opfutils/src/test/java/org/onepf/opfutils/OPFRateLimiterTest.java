@@ -0,0 +1,235 @@
+/*
+ * Copyright 2012-2015 One Platform Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onepf.opfutils;
+
+import android.os.Build;
+import android.support.annotation.NonNull;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.util.Scheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Config(emulateSdk = Build.VERSION_CODES.LOLLIPOP, manifest = Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class OPFRateLimiterTest extends Assert {
+
+    private static final long DELAY_MILLIS = 100;
+    private static final long TIMEOUT_SECONDS = 10;
+
+    @Test
+    public void testCoalesce() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch finished = new CountDownLatch(2);
+        final AtomicInteger runCount = new AtomicInteger();
+        final OPFRateLimiter limiter = OPFRateLimiter.coalesce(OPFExecutors.background(), new Runnable() {
+            @Override
+            public void run() {
+                if (runCount.incrementAndGet() == 1) {
+                    started.countDown();
+                    await(release);
+                }
+                finished.countDown();
+            }
+        });
+
+        limiter.trigger();
+        assertTrue(started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        // The events triggered during the run are handled by a single next run
+        limiter.trigger();
+        limiter.trigger();
+        limiter.trigger();
+        release.countDown();
+
+        assertTrue(finished.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        Thread.sleep(DELAY_MILLIS);
+        assertEquals(2, runCount.get());
+    }
+
+    @Test
+    public void testRunsDontOverlap() throws Exception {
+        final int triggeringThreads = 4;
+        final ExecutorService executor = Executors.newFixedThreadPool(triggeringThreads);
+        try {
+            final CountDownLatch started = new CountDownLatch(1);
+            final CountDownLatch release = new CountDownLatch(1);
+            final CountDownLatch finished = new CountDownLatch(2);
+            final AtomicInteger running = new AtomicInteger();
+            final AtomicBoolean overlapped = new AtomicBoolean();
+            final AtomicInteger runCount = new AtomicInteger();
+            // The action runs on a pool, so the overlapping runs would be possible without the limiter
+            final OPFRateLimiter limiter = OPFRateLimiter.coalesce(executor, new Runnable() {
+                @Override
+                public void run() {
+                    if (running.incrementAndGet() > 1) {
+                        overlapped.set(true);
+                    }
+                    if (runCount.incrementAndGet() == 1) {
+                        started.countDown();
+                        await(release);
+                    }
+                    running.decrementAndGet();
+                    finished.countDown();
+                }
+            });
+
+            limiter.trigger();
+            assertTrue(started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+            final CountDownLatch triggered = new CountDownLatch(triggeringThreads);
+            for (int i = 0; i < triggeringThreads; i++) {
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (int j = 0; j < 100; j++) {
+                            limiter.trigger();
+                        }
+                        triggered.countDown();
+                    }
+                }).start();
+            }
+            assertTrue(triggered.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            release.countDown();
+
+            assertTrue(finished.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            Thread.sleep(DELAY_MILLIS);
+            assertFalse(overlapped.get());
+            assertEquals(2, runCount.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testCancelQueuedRun() {
+        final List<Runnable> queued = new ArrayList<Runnable>();
+        // The paused executor, the queued runs are started manually
+        final Executor executor = new Executor() {
+            @Override
+            public void execute(@NonNull final Runnable command) {
+                queued.add(command);
+            }
+        };
+        final int[] runCount = new int[1];
+        final OPFRateLimiter limiter = OPFRateLimiter.coalesce(executor, new Runnable() {
+            @Override
+            public void run() {
+                runCount[0]++;
+            }
+        });
+
+        limiter.trigger();
+        limiter.cancel();
+        runQueued(queued);
+        assertEquals(0, runCount[0]);
+
+        // The cancelled limiter accepts the new events
+        limiter.trigger();
+        runQueued(queued);
+        assertEquals(1, runCount[0]);
+    }
+
+    @Test
+    public void testDebounce() {
+        final Scheduler scheduler = Robolectric.getForegroundThreadScheduler();
+        final int[] runCount = new int[1];
+        final OPFRateLimiter limiter = OPFRateLimiter.debounce(OPFExecutors.mainThread(), new Runnable() {
+            @Override
+            public void run() {
+                runCount[0]++;
+            }
+        }, DELAY_MILLIS);
+
+        limiter.trigger();
+        scheduler.advanceBy(DELAY_MILLIS / 2);
+        limiter.trigger();
+        scheduler.advanceBy(DELAY_MILLIS / 2);
+        limiter.trigger();
+        scheduler.advanceBy(DELAY_MILLIS / 2);
+        assertEquals(0, runCount[0]);
+
+        scheduler.advanceBy(DELAY_MILLIS / 2);
+        assertEquals(1, runCount[0]);
+        scheduler.advanceBy(DELAY_MILLIS * 2);
+        assertEquals(1, runCount[0]);
+
+        limiter.trigger();
+        limiter.cancel();
+        scheduler.advanceBy(DELAY_MILLIS * 2);
+        assertEquals(1, runCount[0]);
+    }
+
+    @Test
+    public void testThrottle() {
+        final Scheduler scheduler = Robolectric.getForegroundThreadScheduler();
+        final int[] runCount = new int[1];
+        final OPFRateLimiter limiter = OPFRateLimiter.throttle(OPFExecutors.mainThread(), new Runnable() {
+            @Override
+            public void run() {
+                runCount[0]++;
+            }
+        }, DELAY_MILLIS);
+
+        limiter.trigger();
+        assertEquals(1, runCount[0]);
+
+        limiter.trigger();
+        limiter.trigger();
+        scheduler.advanceBy(DELAY_MILLIS / 2);
+        limiter.trigger();
+        assertEquals(1, runCount[0]);
+
+        scheduler.advanceBy(DELAY_MILLIS / 2);
+        assertEquals(2, runCount[0]);
+        scheduler.advanceBy(DELAY_MILLIS * 2);
+        assertEquals(2, runCount[0]);
+
+        limiter.trigger();
+        assertEquals(3, runCount[0]);
+    }
+
+    private static void runQueued(final List<Runnable> queued) {
+        final List<Runnable> tasks = new ArrayList<Runnable>(queued);
+        queued.clear();
+        for (Runnable task : tasks) {
+            task.run();
+        }
+    }
+
+    private static void await(final CountDownLatch latch) {
+        try {
+            latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2012-2015 One Platform Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onepf.opfutils;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.os.Build;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.Collections;
+
+import static org.robolectric.Shadows.shadowOf;
+
+@Config(emulateSdk = Build.VERSION_CODES.LOLLIPOP, manifest = Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class OPFStartupProfilerTest extends Assert {
+
+    @After
+    public void tearDown() {
+        OPFStartupProfiler.clear();
+        ManifestIndex.invalidate();
+        OPFUtils.clearCurrentProcessName();
+    }
+
+    @Test
+    public void testTimeline() throws InterruptedException {
+        final Context context = RuntimeEnvironment.application;
+        final ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        shadowOf(activityManager).setProcesses(Collections.singletonList(new ActivityManager.RunningAppProcessInfo(
+                context.getPackageName(), android.os.Process.myPid(), null)));
+        OPFStartupProfiler.enable();
+        assertTrue(OPFStartupProfiler.isEnabled());
+
+        final OPFPreferences preferences = new OPFPreferences(context);
+        // Only the first access waits for the file
+        preferences.contains("key");
+        preferences.contains("key");
+        OPFChecks.hasMetadata(context, "org.onepf.opfutils.test.METADATA");
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                // The process name is resolved once
+                OPFUtils.isMainProcess(context);
+                OPFUtils.isMainProcess(context);
+            }
+        });
+        thread.start();
+        thread.join();
+        OPFStartupProfiler.disable();
+
+        final String[] lines = OPFStartupProfiler.dump().split("\n");
+        assertEquals(4, lines.length);
+        assertTrue(lines[0].startsWith("startup ms since "));
+        assertTrue(lines[0].endsWith(" records=3"));
+        assertTrue(lines[1].matches("\\+\\d+\\.\\d{2} \\d+\\.\\d{2} main preferences\\.load "
+                + context.getPackageName()));
+        assertTrue(lines[2].matches("\\+\\d+\\.\\d{2} \\d+\\.\\d{2} main checks\\.manifest_index "
+                + context.getPackageName()));
+        assertTrue(lines[3].matches("\\+\\d+\\.\\d{2} \\d+\\.\\d{2} bg utils\\.process_name"));
+        assertTrue(OPFStartupProfiler.getMainThreadNanos() > 0);
+    }
+
+    @Test
+    public void testDisabled() {
+        OPFStartupProfiler.enable();
+        OPFStartupProfiler.disable();
+        new OPFPreferences(RuntimeEnvironment.application).contains("key");
+        OPFUtils.isMainProcess(RuntimeEnvironment.application);
+
+        assertTrue(OPFStartupProfiler.dump().endsWith(" records=0"));
+        assertEquals(0, OPFStartupProfiler.getMainThreadNanos());
+        assertEquals(0, OPFStartupProfiler.getBackgroundNanos());
+    }
+
+    @Test
+    public void testMaxRecords() {
+        OPFStartupProfiler.enable();
+        for (int i = 0; i < OPFStartupProfiler.MAX_RECORDS + 1; i++) {
+            OPFStartupProfiler.end(OPFStartupProfiler.PREFERENCES_LOAD, null, OPFStartupProfiler.begin());
+        }
+
+        final String[] lines = OPFStartupProfiler.dump().split("\n");
+        assertEquals(OPFStartupProfiler.MAX_RECORDS + 1, lines.length);
+        assertTrue(lines[0].endsWith(" records=" + OPFStartupProfiler.MAX_RECORDS));
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2012-2015 One Platform Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onepf.opfutils;
+
+import android.os.Build;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.onepf.opfutils.exception.WrongThreadException;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+@Config(emulateSdk = Build.VERSION_CODES.LOLLIPOP, manifest = Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class OPFThreadAffinityTest extends Assert {
+
+    @Test
+    public void testMainThread() throws Exception {
+        final OPFThreadAffinity affinity = OPFThreadAffinity.mainThread();
+        affinity.check();
+        assertFalse(callOnOtherThread(affinity, "other"));
+    }
+
+    @Test
+    public void testNamedThread() throws Exception {
+        final OPFThreadAffinity affinity = OPFThreadAffinity.namedThread("worker");
+        assertFalse(affinity.isCurrentThread());
+        assertTrue(callOnOtherThread(affinity, "worker"));
+        assertFalse(callOnOtherThread(affinity, "other"));
+    }
+
+    @Test
+    public void testRenamedThread() throws Exception {
+        final OPFThreadAffinity affinity = OPFThreadAffinity.namedThread("worker");
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Callable<Boolean> check = new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return affinity.isCurrentThread();
+                }
+            };
+            assertFalse(executor.submit(check).get());
+            executor.submit(renameTo("worker")).get();
+            assertTrue(executor.submit(check).get());
+            executor.submit(renameTo("other")).get();
+            assertFalse(executor.submit(check).get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testConfined() throws Exception {
+        final OPFThreadAffinity affinity = OPFThreadAffinity.confined();
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Callable<Boolean> check = new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return affinity.isCurrentThread();
+                }
+            };
+            assertTrue(executor.submit(check).get());
+            assertTrue(executor.submit(check).get());
+            assertFalse(affinity.isCurrentThread());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test(expected = WrongThreadException.class)
+    public void testCheckThrows() {
+        OPFThreadAffinity.namedThread("worker").check();
+    }
+
+    private static Callable<Void> renameTo(final String threadName) {
+        return new Callable<Void>() {
+            @Override
+            public Void call() {
+                Thread.currentThread().setName(threadName);
+                return null;
+            }
+        };
+    }
+
+    private static boolean callOnOtherThread(final OPFThreadAffinity affinity, final String threadName)
+            throws InterruptedException {
+        final boolean[] result = new boolean[1];
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                result[0] = affinity.isCurrentThread();
+            }
+        }, threadName);
+        thread.start();
+        thread.join(TimeUnit.SECONDS.toMillis(10));
+        return result[0];
+    }
+}
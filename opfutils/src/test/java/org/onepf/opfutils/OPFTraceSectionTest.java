@@ -0,0 +1,80 @@
+/*
+ * Copyright 2012-2015 One Platform Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onepf.opfutils;
+
+import android.os.Build;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.onepf.opfutils.core.OPFHistogram;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@Config(emulateSdk = Build.VERSION_CODES.LOLLIPOP, manifest = Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class OPFTraceSectionTest extends Assert {
+
+    @After
+    public void tearDown() {
+        OPFLog.setTraceHistogramsEnabled(false);
+        OPFLog.clearTraceHistograms();
+    }
+
+    @Test
+    public void testHistogramsDisabled() {
+        OPFLog.trace("section").close();
+        assertTrue(OPFLog.getTraceHistograms().isEmpty());
+        // The app isn't traced, so nothing is emitted or allocated
+        assertSame(OPFTraceSection.NO_OP, OPFLog.trace("section"));
+    }
+
+    @Test
+    public void testHistogramsEnabled() {
+        OPFLog.setTraceHistogramsEnabled(true);
+        for (int i = 0; i < 3; i++) {
+            OPFLog.trace("section").close();
+        }
+
+        final OPFHistogram histogram = OPFLog.getTraceHistograms().get("section");
+        assertNotNull(histogram);
+        assertEquals(3, histogram.getCount());
+    }
+
+    @Test
+    public void testHistogramsLimited() {
+        OPFLog.setTraceHistogramsEnabled(true);
+        for (int i = 0; i < OPFTraceSection.MAX_HISTOGRAMS + 1; i++) {
+            OPFLog.trace("section " + i).close();
+        }
+        OPFLog.trace("section 0").close();
+
+        assertEquals(OPFTraceSection.MAX_HISTOGRAMS, OPFLog.getTraceHistograms().size());
+        assertEquals(2, OPFLog.getTraceHistograms().get("section 0").getCount());
+    }
+
+    @Test
+    public void testTraceMethod() {
+        OPFLog.setTraceHistogramsEnabled(true);
+        OPFLog.traceMethod().close();
+
+        // The calling method can't be resolved here, because the test is in the library package
+        assertEquals(1, OPFLog.getTraceHistograms().size());
+    }
+}
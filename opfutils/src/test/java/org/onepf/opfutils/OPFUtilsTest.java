@@ -16,25 +16,40 @@
 
 package org.onepf.opfutils;
 
+import android.app.ActivityManager;
 import android.content.Context;
+import android.content.Intent;
 import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import android.net.ConnectivityManager;
+import android.net.Uri;
 import android.os.Build;
+import android.os.Bundle;
+import android.support.annotation.NonNull;
 
 import junit.framework.Assert;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.onepf.opfutils.core.OPFRenderLimits;
+import org.robolectric.Robolectric;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.RuntimeEnvironment;
 import org.robolectric.annotation.Config;
+import org.robolectric.res.builder.DefaultPackageManager;
 import org.robolectric.res.builder.RobolectricPackageManager;
 import org.robolectric.shadows.ShadowApplication;
 import org.robolectric.shadows.ShadowNetworkInfo;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Random;
 
 import static org.robolectric.Shadows.shadowOf;
@@ -75,6 +90,42 @@ public class OPFUtilsTest extends Assert {
         assertFalse(OPFUtils.isConnected(ctx));
     }
 
+    @Test
+    public void testConnectivityMonitor() {
+        final ConnectivityManager connectivityManager = (ConnectivityManager) ctx.getSystemService(Context.CONNECTIVITY_SERVICE);
+        final ShadowNetworkInfo shadowNetworkInfo = shadowOf(connectivityManager.getActiveNetworkInfo());
+        final Boolean[] notifiedState = new Boolean[1];
+        final OPFConnectivityMonitor.Listener listener = new OPFConnectivityMonitor.Listener() {
+            @Override
+            public void onConnectivityChanged(final boolean isConnected) {
+                notifiedState[0] = isConnected;
+            }
+        };
+
+        shadowNetworkInfo.setConnectionStatus(true);
+        OPFConnectivityMonitor.addListener(listener);
+        OPFConnectivityMonitor.start(ctx);
+        try {
+            assertTrue(OPFUtils.isConnected(ctx));
+
+            // The cached state is returned until the connectivity broadcast is received
+            shadowNetworkInfo.setConnectionStatus(false);
+            assertTrue(OPFUtils.isConnected(ctx));
+            assertNull(notifiedState[0]);
+
+            ctx.sendBroadcast(new Intent(ConnectivityManager.CONNECTIVITY_ACTION));
+            assertFalse(OPFUtils.isConnected(ctx));
+            assertFalse(OPFConnectivityMonitor.isConnected());
+            assertEquals(Boolean.FALSE, notifiedState[0]);
+        } finally {
+            OPFConnectivityMonitor.stop();
+            OPFConnectivityMonitor.removeListener(listener);
+        }
+
+        shadowNetworkInfo.setConnectionStatus(true);
+        assertTrue(OPFUtils.isConnected(ctx));
+    }
+
     @Test
     public void testGetAppVersion() throws PackageManager.NameNotFoundException {
         PackageInfo packageInfo;
@@ -99,6 +150,24 @@ public class OPFUtilsTest extends Assert {
         return packageInfo;
     }
 
+    @Test
+    public void testAppInfoMemoized() {
+        final PackageInfo packageInfo = createTestPackageInfo(NUM_TESTS + 1);
+        packageInfo.applicationInfo.flags = ApplicationInfo.FLAG_SYSTEM;
+        packageManager.addPackage(packageInfo);
+        shadowApplication.setPackageName(packageInfo.packageName);
+        AppInfo.clear();
+
+        assertEquals(packageInfo.versionCode, OPFUtils.getAppVersion(ctx));
+        assertTrue(OPFUtils.isSystemApp(ctx, packageInfo.packageName));
+
+        // The package can't change while the process is alive, so it isn't requested again
+        packageManager.removePackage(packageInfo.packageName);
+        assertEquals(packageInfo.versionCode, OPFUtils.getAppVersion(ctx));
+        assertTrue(OPFUtils.isSystemApp(ctx, packageInfo.packageName));
+        AppInfo.clear();
+    }
+
     @Test
     public void testIsSystemApp() {
         int testNum = 1;
@@ -136,4 +205,193 @@ public class OPFUtilsTest extends Assert {
         packageInfo = createTestPackageInfo(testNum);
         assertFalse(OPFUtils.isInstalled(ctx, packageInfo.packageName));
     }
+
+    @Test
+    public void testGetCurrentProcessName() throws IOException {
+        final ActivityManager activityManager = (ActivityManager) ctx.getSystemService(Context.ACTIVITY_SERVICE);
+        shadowApplication.setPackageName(TEST_PACKAGE_NAME);
+        try {
+            // The command line of the app process is trusted, the running processes aren't requested
+            setProcesses(activityManager);
+            setCmdline(TEST_PACKAGE_NAME + "\0arg");
+            assertEquals(TEST_PACKAGE_NAME, OPFUtils.getCurrentProcessName(ctx));
+            assertTrue(OPFUtils.isMainProcess(ctx));
+
+            // The name is cached for the process lifetime
+            setCmdline(TEST_PACKAGE_NAME + ":remote");
+            assertEquals(TEST_PACKAGE_NAME, OPFUtils.getCurrentProcessName(ctx));
+
+            OPFUtils.clearCurrentProcessName();
+            assertEquals(TEST_PACKAGE_NAME + ":remote", OPFUtils.getCurrentProcessName(ctx));
+            assertFalse(OPFUtils.isMainProcess(ctx));
+        } finally {
+            OPFUtils.cmdlinePath = "/proc/self/cmdline";
+            OPFUtils.clearCurrentProcessName();
+        }
+    }
+
+    @Test
+    public void testGetCurrentProcessNameFallback() throws IOException {
+        final ActivityManager activityManager = (ActivityManager) ctx.getSystemService(Context.ACTIVITY_SERVICE);
+        shadowApplication.setPackageName(TEST_PACKAGE_NAME);
+        try {
+            // A process which isn't forked from zygote has the executable in the command line
+            setProcesses(activityManager, TEST_PACKAGE_NAME);
+            setCmdline("java\0-cp");
+            assertEquals(TEST_PACKAGE_NAME, OPFUtils.getCurrentProcessName(ctx));
+
+            // The package name must be followed by the process suffix
+            setProcesses(activityManager, TEST_PACKAGE_NAME + ":remote");
+            setCmdline(TEST_PACKAGE_NAME + "s");
+            assertEquals(TEST_PACKAGE_NAME + ":remote", OPFUtils.getCurrentProcessName(ctx));
+
+            setProcesses(activityManager);
+            OPFUtils.cmdlinePath = new File(ctx.getCacheDir(), "missing_cmdline").getPath();
+            assertNull(OPFUtils.getCurrentProcessName(ctx));
+        } finally {
+            OPFUtils.cmdlinePath = "/proc/self/cmdline";
+            OPFUtils.clearCurrentProcessName();
+        }
+    }
+
+    private static void setProcesses(@NonNull final ActivityManager activityManager,
+                                     @NonNull final String... processNames) {
+        final List<ActivityManager.RunningAppProcessInfo> processes
+                = new ArrayList<ActivityManager.RunningAppProcessInfo>();
+        for (String processName : processNames) {
+            processes.add(new ActivityManager.RunningAppProcessInfo(processName, android.os.Process.myPid(), null));
+        }
+        shadowOf(activityManager).setProcesses(processes);
+        OPFUtils.clearCurrentProcessName();
+    }
+
+    private void setCmdline(@NonNull final String cmdline) throws IOException {
+        final File file = File.createTempFile("cmdline", null, ctx.getCacheDir());
+        file.deleteOnExit();
+        final FileOutputStream outputStream = new FileOutputStream(file);
+        try {
+            outputStream.write(cmdline.getBytes("UTF-8"));
+        } finally {
+            outputStream.close();
+        }
+        OPFUtils.cmdlinePath = file.getPath();
+    }
+
+    @Test
+    public void testGetPackageStates() {
+        final PackageInfo installed = createTestPackageInfo(NUM_TESTS + 2);
+        final PackageInfo system = createTestPackageInfo(NUM_TESTS + 3);
+        system.applicationInfo.flags = ApplicationInfo.FLAG_SYSTEM;
+        final String notInstalled = createTestPackageInfo(NUM_TESTS + 4).packageName;
+        packageManager.addPackage(installed);
+        packageManager.addPackage(system);
+        OPFPackageStates.invalidate();
+
+        final List<String> packages = Arrays.asList(installed.packageName, system.packageName, notInstalled);
+        OPFPackageStates states = OPFUtils.getPackageStates(ctx, packages);
+        assertTrue(states.isInstalled(installed.packageName));
+        assertFalse(states.isSystemApp(installed.packageName));
+        assertTrue(states.isInstalled(system.packageName));
+        assertTrue(states.isSystemApp(system.packageName));
+        assertFalse(states.isInstalled(notInstalled));
+        assertEquals(2, states.getInstalledPackages().size());
+
+        // The cached list is used until a package change broadcast is received
+        packageManager.removePackage(installed.packageName);
+        assertTrue(OPFUtils.getPackageStates(ctx, packages).isInstalled(installed.packageName));
+
+        final Intent intent = new Intent(Intent.ACTION_PACKAGE_REMOVED, Uri.parse("package:" + installed.packageName));
+        RuntimeEnvironment.application.sendBroadcast(intent);
+        states = OPFUtils.getPackageStates(ctx, packages);
+        assertFalse(states.isInstalled(installed.packageName));
+        assertTrue(states.isInstalled(system.packageName));
+    }
+
+    @Test
+    public void testPackageStatesDropListOfInvalidatedQuery() {
+        final int[] queryCount = new int[1];
+        RuntimeEnvironment.setRobolectricPackageManager(new DefaultPackageManager(Robolectric.getShadowsAdapter()) {
+            @Override
+            public List<PackageInfo> getInstalledPackages(final int flags) {
+                // A package is changed while the first list is loaded
+                if (queryCount[0]++ == 0) {
+                    OPFPackageStates.invalidate();
+                }
+                return super.getInstalledPackages(flags);
+            }
+        });
+        OPFPackageStates.invalidate();
+
+        final List<String> packages = Collections.singletonList(TEST_PACKAGE_NAME);
+        OPFUtils.getPackageStates(ctx, packages);
+        OPFUtils.getPackageStates(ctx, packages);
+        assertEquals(2, queryCount[0]);
+        OPFUtils.getPackageStates(ctx, packages);
+        assertEquals(2, queryCount[0]);
+    }
+
+    @Test
+    public void testBoundedRendering() throws IOException {
+        final Bundle nested = new Bundle();
+        nested.putIntArray("ints", new int[]{1, 2, 3});
+        final Bundle extras = new Bundle();
+        extras.putBundle("nested", nested);
+        final Intent intent = new Intent("action");
+        intent.putExtras(extras);
+
+        final OPFRenderLimits limits = new OPFRenderLimits.Builder()
+                .setMaxElements(2)
+                .build();
+        assertEquals("Intent{action=\"action\", data=\"null\", component=\"null\", "
+                        + "extras=[\"nested\":[\"ints\":[\"1\", \"2\", ...(1 more)]]]}",
+                OPFUtils.appendTo(new StringBuilder(), intent, limits).toString());
+
+        final OPFRenderLimits shallow = new OPFRenderLimits.Builder()
+                .setMaxDepth(0)
+                .build();
+        assertEquals("[\"nested\":[...]]", OPFUtils.toString(extras, shallow));
+        // The intent extras have the same depth as a top-level bundle
+        assertEquals("Intent{action=\"action\", data=\"null\", component=\"null\", extras=[\"nested\":[...]]}",
+                OPFUtils.toString(intent, shallow));
+
+        final Bundle large = new Bundle();
+        large.putByteArray("bytes", new byte[1024 * 1024]);
+        final OPFRenderLimits truncating = new OPFRenderLimits.Builder()
+                .setMaxLength(16)
+                .build();
+        final String rendered = OPFUtils.toString(large, truncating);
+        assertEquals("[\"bytes\":[\"0\", \"..." , rendered);
+
+        // The existing format isn't changed
+        assertEquals("[\"nested\":\"" + nested + "\"]", OPFUtils.toString(extras));
+    }
+
+    @Test
+    public void testLazyToString() {
+        final int[] renderCount = new int[1];
+        final Intent intent = new Intent("action") {
+            @Override
+            public String getAction() {
+                renderCount[0]++;
+                return super.getAction();
+            }
+        };
+
+        OPFLog.setEnabled(false, false);
+        final Object lazyIntent = OPFUtils.lazyToString(intent);
+        OPFLog.d("Received: %s", lazyIntent);
+        assertEquals(0, renderCount[0]);
+
+        final String expected = OPFUtils.toString(intent);
+        renderCount[0] = 0;
+        assertEquals(expected, lazyIntent.toString());
+        assertEquals(expected, lazyIntent.toString());
+        assertEquals(1, renderCount[0]);
+
+        final Bundle bundle = new Bundle();
+        bundle.putString("key", "value");
+        assertEquals(OPFUtils.toString(bundle), OPFUtils.lazyToString(bundle).toString());
+        assertEquals(OPFUtils.toString(bundle, OPFRenderLimits.DEFAULT),
+                OPFUtils.lazyToString(bundle, OPFRenderLimits.DEFAULT).toString());
+    }
 }
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2012-2015 One Platform Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onepf.opfutils;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class StringBuilderPoolTest extends Assert {
+
+    @Test
+    public void testReuse() {
+        final StringBuilder first = StringBuilderPool.obtain();
+        first.append("text");
+        StringBuilderPool.release(first);
+
+        final StringBuilder second = StringBuilderPool.obtain();
+        assertSame(first, second);
+        assertEquals(0, second.length());
+        StringBuilderPool.release(second);
+    }
+
+    @Test
+    public void testNested() {
+        final StringBuilder outer = StringBuilderPool.obtain();
+        final StringBuilder inner = StringBuilderPool.obtain();
+        assertNotSame(outer, inner);
+        StringBuilderPool.release(inner);
+        StringBuilderPool.release(outer);
+
+        // Both builders are retained
+        final StringBuilder[] builders = new StringBuilder[StringBuilderPool.POOL_SIZE + 1];
+        for (int i = 0; i < builders.length; i++) {
+            builders[i] = StringBuilderPool.obtain();
+        }
+        assertTrue(contains(builders, outer));
+        assertTrue(contains(builders, inner));
+        for (StringBuilder builder : builders) {
+            StringBuilderPool.release(builder);
+        }
+    }
+
+    @Test
+    public void testLargeBuilderIsNotRetained() {
+        final StringBuilder large = StringBuilderPool.obtain();
+        large.setLength(StringBuilderPool.MAX_RETAINED_CAPACITY + 1);
+        StringBuilderPool.release(large);
+
+        final StringBuilder[] builders = new StringBuilder[StringBuilderPool.POOL_SIZE];
+        for (int i = 0; i < builders.length; i++) {
+            builders[i] = StringBuilderPool.obtain();
+        }
+        assertFalse(contains(builders, large));
+        for (StringBuilder builder : builders) {
+            StringBuilderPool.release(builder);
+        }
+    }
+
+    private static boolean contains(final StringBuilder[] builders, final StringBuilder builder) {
+        for (StringBuilder item : builders) {
+            if (item == builder) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
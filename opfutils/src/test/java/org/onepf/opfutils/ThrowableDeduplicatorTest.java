@@ -0,0 +1,72 @@
+/*
+ * Copyright 2012-2015 One Platform Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onepf.opfutils;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class ThrowableDeduplicatorTest extends Assert {
+
+    @Test
+    public void testSameStackShapeIsRenderedOnce() {
+        final ThrowableDeduplicator deduplicator = new ThrowableDeduplicator(4);
+        String first = null;
+        String last = null;
+        for (int i = 0; i < 3; i++) {
+            final String rendered = deduplicator.render(createThrowable("message " + i));
+            if (first == null) {
+                first = rendered;
+            }
+            last = rendered;
+        }
+
+        assertTrue(first.startsWith("#1 "));
+        assertTrue(first.contains("createThrowable"));
+        assertTrue(last.contains("#1"));
+        assertTrue(last.contains("repeated 3 times"));
+        assertFalse(last.contains("createThrowable"));
+    }
+
+    @Test
+    public void testDifferentStackShapes() {
+        final long[] fingerprints = new long[2];
+        for (int i = 0; i < fingerprints.length; i++) {
+            fingerprints[i] = ThrowableDeduplicator.fingerprint(createThrowable("message " + i));
+        }
+        assertEquals(fingerprints[0], fingerprints[1]);
+
+        final Throwable other = new IllegalStateException("message 0");
+        assertFalse(fingerprints[0] == ThrowableDeduplicator.fingerprint(other));
+    }
+
+    @Test
+    public void testCapacity() {
+        final ThrowableDeduplicator deduplicator = new ThrowableDeduplicator(1);
+        final Throwable first = createThrowable("first");
+        final Throwable second = new IllegalStateException("second");
+
+        assertTrue(deduplicator.render(first).startsWith("#1 "));
+        assertTrue(deduplicator.render(second).startsWith("#2 "));
+        // The first fingerprint has been evicted
+        assertTrue(deduplicator.render(first).startsWith("#3 "));
+    }
+
+    private static Throwable createThrowable(final String message) {
+        return new IllegalArgumentException(message);
+    }
+}